@@ -0,0 +1,132 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.crypto.jwt;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * {@link JWTVerificationBenchmark} compares the verification of a VAPID JWT with a new {@link JWTHandler} per verification, as formerly done by
+ * the VAPID validation, with the shared {@link ES256JWTVerifier}.
+ * <p>
+ * The benchmark runs single threaded, so the throughput is the number of verifications per second and core. The allocations per verification
+ * are reported by the gc profiler as <code>gc.alloc.rate.norm</code>.
+ *
+ * <pre>
+ * ./gradlew :COIPushService:jmh
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(1)
+public class JWTVerificationBenchmark {
+
+    private static final String AUDIENCE = "https://push.example.net";
+
+    private KeyPair keyPair;
+    private String jwt;
+    private ES256JWTVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        keyPair = generator.generateKeyPair();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder().audience(AUDIENCE).expirationTime(new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(12))).subject("mailto:push@example.com").build();
+        SignedJWT signed = new SignedJWT(new JWSHeader(JWSAlgorithm.ES256), claims);
+        signed.sign(new ECDSASigner((ECPrivateKey) keyPair.getPrivate()));
+        jwt = signed.serialize();
+        verifier = new ES256JWTVerifier(AUDIENCE);
+    }
+
+    @Benchmark
+    public JWTValidationResult handler() {
+        Map<String, Object> expectedClaims = new HashMap<String, Object>();
+        expectedClaims.put(JWTHandler.AUD_CLAIM, Arrays.asList(AUDIENCE));
+        return new JWTHandler("ES256").validateJWT(jwt, keyPair.getPublic(), expectedClaims);
+    }
+
+    @Benchmark
+    public JWTValidationResult verifier() {
+        return verifier.verify(jwt, keyPair.getPublic());
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.rest.cache;
+
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.openexchange.coi.services.push.crypto.keys.parsing.ParsedPublicKey;
+import com.openexchange.coi.services.push.crypto.keys.parsing.PublicKeyParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PublicKeyCacheBenchmark} compares the cold acquisition of the public key of a VAPID header with the warm acquisition from the
+ * {@link PublicKeyCache}.
+ * <ul>
+ * <li><code>cold</code> - the former path which parses the key and looks up a new {@link KeyFactory} each time</li>
+ * <li><code>parse</code> - parses the key with the per thread {@link KeyFactory} of the {@link PublicKeyParser}</li>
+ * <li><code>warm</code> - gets the key from the {@link PublicKeyCache}</li>
+ * </ul>
+ *
+ * <pre>
+ * ./gradlew :COIPushService:jmh
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicKeyCacheBenchmark {
+
+    private String keyMaterial;
+    private PublicKeyParser parser;
+    private PublicKeyCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        keyMaterial = Base64.getUrlEncoder().withoutPadding().encodeToString(generator.generateKeyPair().getPublic().getEncoded());
+        parser = new PublicKeyParser();
+        cache = new PublicKeyCache(new SimpleMeterRegistry());
+        cache.init();
+        cache.getPublicKey(keyMaterial);
+    }
+
+    @Benchmark
+    public PublicKey cold() throws Exception {
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(Base64.getUrlDecoder().decode(keyMaterial));
+        return KeyFactory.getInstance("EC").generatePublic(spec);
+    }
+
+    @Benchmark
+    public PublicKey parse() throws Exception {
+        return parser.parse(keyMaterial);
+    }
+
+    @Benchmark
+    public ParsedPublicKey warm() throws Exception {
+        return cache.getPublicKey(keyMaterial);
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.storage.mysql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import com.openexchange.coi.services.util.UUIDs;
+
+/**
+ * {@link IdLookupBenchmark} compares point lookups of push resources keyed by the textual form of their id with lookups keyed by the 16 byte
+ * binary form.
+ * <p>
+ * The benchmark runs against an in-memory H2 database, so it shows the difference in key comparison and index size but not the effect on the
+ * buffer pool of a real database. To compare the index sizes on MySQL generate the rows there and check
+ * <code>information_schema.TABLES.INDEX_LENGTH</code> and <code>DATA_LENGTH</code> of both tables.
+ *
+ * <pre>
+ * ./gradlew :COIPushService:jmh
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdLookupBenchmark {
+
+    private static final String CREATE = "CREATE TABLE %s (id %s PRIMARY KEY, pushtoken VARCHAR(256) NOT NULL, expiredate DATETIME)";
+
+    @Param({ "100000", "1000000" })
+    private int size;
+
+    private JdbcTemplate template;
+    private List<UUID> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:ids;DB_CLOSE_DELAY=-1"));
+        template.execute(String.format(CREATE, "textids", "VARCHAR(191)"));
+        template.execute(String.format(CREATE, "binaryids", "BINARY(16)"));
+
+        ids = new ArrayList<>(size);
+        List<Object[]> textRows = new ArrayList<>(size);
+        List<Object[]> binaryRows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+            textRows.add(new Object[] { id.toString(), "token" + i });
+            binaryRows.add(new Object[] { UUIDs.toBytes(id), "token" + i });
+        }
+        template.batchUpdate("INSERT INTO textids (id, pushtoken) VALUES (?, ?)", textRows);
+        template.batchUpdate("INSERT INTO binaryids (id, pushtoken) VALUES (?, ?)", binaryRows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        template.execute("DROP TABLE textids");
+        template.execute("DROP TABLE binaryids");
+    }
+
+    private UUID next() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public String textLookup() {
+        return template.queryForObject("SELECT pushtoken FROM textids WHERE id=?", String.class, next().toString());
+    }
+
+    @Benchmark
+    public String binaryLookup() {
+        return template.queryForObject("SELECT pushtoken FROM binaryids WHERE id=?", String.class, (Object) UUIDs.toBytes(next()));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.storage.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.mysql.entities.PushResourceImpl;
+
+/**
+ * {@link PushResourceLookupBenchmark} compares N single lookups with a single bulk lookup of push resources.
+ * <p>
+ * The benchmark runs against an in-memory H2 database and therefore doesn't include the network round trip to a real database, which is the
+ * main cost saved by the bulk lookup. The numbers are a lower bound for the difference.
+ *
+ * <pre>
+ * ./gradlew :COIPushService:jmh
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PushResourceLookupBenchmark {
+
+    private static final String CREATE = "CREATE TABLE pushresources (id BINARY(16) PRIMARY KEY, appid VARCHAR(128) NOT NULL, pushtoken VARCHAR(256) NOT NULL, transport VARCHAR(128) NOT NULL, lastmodified DATETIME NOT NULL, expiredate DATETIME, publickey VARBINARY(91) NOT NULL, validated BOOLEAN NOT NULL)";
+
+    @Param({ "10", "100", "1000" })
+    private int size;
+
+    private MysqlPushResourceStorage storage;
+    private List<String> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:lookup;DB_CLOSE_DELAY=-1");
+        storage = new MysqlPushResourceStorage();
+        storage.template = new JdbcTemplate(dataSource);
+        storage.template.execute("DROP TABLE IF EXISTS pushresources");
+        storage.template.execute(CREATE);
+
+        ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PushResource resource = new PushResourceImpl();
+            resource.setAppId("com.openexchange.coi");
+            resource.setPushToken("token" + i);
+            resource.setTransport("firebase");
+            resource.setLastModified(new Date());
+            resource.setExpireDate(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+            resource.setPublicKey(new byte[65]);
+            resource.setValid(true);
+            ids.add(storage.save(resource).getId());
+        }
+        Collections.shuffle(ids);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        storage.template.execute("DROP TABLE pushresources");
+    }
+
+    @Benchmark
+    public void singleLookups(Blackhole blackhole) {
+        for (String id : ids) {
+            blackhole.consume(storage.getById(id));
+        }
+    }
+
+    @Benchmark
+    public void bulkLookup(Blackhole blackhole) {
+        blackhole.consume(storage.getByIds(ids));
+    }
+
+}
@@ -53,6 +53,8 @@ import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static org.springframework.http.HttpStatus.PAYLOAD_TOO_LARGE;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 import org.springframework.http.HttpStatus;
 import com.openexchange.coi.services.exception.CoiServiceException.Type;
@@ -132,6 +134,30 @@ public enum CoiServiceExceptionCodes {
      * The method is not supported
      */
     METHOD_NOT_SUPPORTED("The method is not supported", "17", METHOD_NOT_ALLOWED),
+    /**
+     * The push dispatch queue is full. Please try again after %1$s seconds!
+     */
+    DISPATCH_QUEUE_FULL(Type.TRY_AGAIN, "The push dispatch queue is full. Please try again after %1$s seconds!", "18", SERVICE_UNAVAILABLE),
+    /**
+     * The push transport %1$s is currently unavailable. Please try again after %2$s seconds!
+     */
+    TRANSPORT_UNAVAILABLE(Type.TRY_AGAIN, "The push transport %1$s is currently unavailable. Please try again after %2$s seconds!", "19", SERVICE_UNAVAILABLE),
+    /**
+     * The Topic header is invalid. It must not exceed 32 characters of the URL and filename safe base64 alphabet.
+     */
+    INVALID_TOPIC(Type.USER_INPUT, "The Topic header is invalid. It must not exceed 32 characters of the URL and filename safe base64 alphabet.", "20", BAD_REQUEST),
+    /**
+     * The push batch exceeds the maximum number of %1$s push messages.
+     */
+    BATCH_SIZE_EXCEEDED(Type.USER_INPUT, "The push batch exceeds the maximum number of %1$s push messages.", "21", PAYLOAD_TOO_LARGE),
+    /**
+     * The VAPID verification queue is full. Please try again after %1$s seconds!
+     */
+    VERIFICATION_QUEUE_FULL(Type.TRY_AGAIN, "The VAPID verification queue is full. Please try again after %1$s seconds!", "22", SERVICE_UNAVAILABLE),
+    /**
+     * The push transport %1$s is currently overloaded. Please try again after %2$s seconds!
+     */
+    TRANSPORT_OVERLOADED(Type.TRY_AGAIN, "The push transport %1$s is currently overloaded. Please try again after %2$s seconds!", "23", SERVICE_UNAVAILABLE),
     ;
 
     private String msg;
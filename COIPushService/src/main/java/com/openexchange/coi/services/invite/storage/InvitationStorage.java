@@ -70,6 +70,16 @@ public interface InvitationStorage {
      */
     InvitationEntity save(InvitationEntity invitation) throws CoiServiceException;
 
+    /**
+     * Updates the given invitation. Only the properties which differ from the original invitation are written.
+     *
+     * @param original The invitation as currently stored
+     * @param invitation The changed invitation
+     * @return The updated invitation
+     * @throws CoiServiceException in case of errors
+     */
+    InvitationEntity update(InvitationEntity original, InvitationEntity invitation) throws CoiServiceException;
+
     /**
      * Deletes the given invitation
      *
@@ -56,8 +56,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.util.purge.ExpiryPurger;
+import com.openexchange.coi.services.util.purge.PartitionRotation;
 
 /**
  * {@link InvitationCleanupTask} cleans up expired invitations
@@ -73,15 +74,26 @@ public class InvitationCleanupTask {
 
     @Autowired
     private MysqlInvitationStorage storage;
+
+    @Autowired
+    private ExpiryPurger purger;
+
+    @Autowired
+    private PartitionRotation rotation;
     //    @Autowired
     //    private InvitationRepository repo;
 
     @Scheduled(fixedRateString = "${com.openexchange.coi.services.invite.database.cleanup:3600000}")
-    @Transactional
     public void cleanInvitations() {
+        purger.execute("invitations", this::cleanup);
+    }
+
+    private void cleanup() {
         long start = System.currentTimeMillis();
-        int numOfCLeanedUpInvitations = storage.cleanup(new Date());
-        LOG.info("Invitation cleanup task deleted {} invitations in {} milliseconds.", numOfCLeanedUpInvitations, System.currentTimeMillis() - start);
+        Date now = new Date();
+        int droppedPartitions = rotation.rotate("invitations", "expireDate", now);
+        int numOfCLeanedUpInvitations = purger.purge("invitations", storage, now, ids -> {});
+        LOG.info("Invitation cleanup task dropped {} partitions and deleted {} invitations in {} milliseconds.", droppedPartitions, numOfCLeanedUpInvitations, System.currentTimeMillis() - start);
     }
 
 }
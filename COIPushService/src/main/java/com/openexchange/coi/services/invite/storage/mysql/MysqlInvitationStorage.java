@@ -54,10 +54,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataAccessException;
@@ -71,6 +76,9 @@ import com.openexchange.coi.services.invite.storage.InvitationEntity;
 import com.openexchange.coi.services.invite.storage.InvitationField;
 import com.openexchange.coi.services.invite.storage.InvitationStorage;
 import com.openexchange.coi.services.invite.storage.mysql.mapper.InvitationMapper;
+import com.openexchange.coi.services.util.UUIDs;
+import com.openexchange.coi.services.util.purge.ExpiringStorage;
+import com.openexchange.coi.services.util.purge.ExpiryBuckets;
 
 /**
  * {@link MysqlInvitationStorage}
@@ -80,20 +88,31 @@ import com.openexchange.coi.services.invite.storage.mysql.mapper.InvitationMappe
  */
 @Service
 @Profile(Profiles.INVITE + " & " + Profiles.MYSQL)
-public class MysqlInvitationStorage implements InvitationStorage {
+public class MysqlInvitationStorage implements InvitationStorage, ExpiringStorage {
 
     private static final String SELECT = "SELECT * FROM invitations WHERE id=?";
     private static final String LIST = "SELECT * FROM invitations ORDER BY id LIMIT ?,?;";
     private static final String INSERT = "INSERT INTO invitations (";
     private static final String UPDATE = "UPDATE invitations SET ";
     private static final String DELETE = "DELETE FROM invitations WHERE id=?;";
-    private static final String CLEAN = "DELETE FROM invitations WHERE expireDate<=?;";
+    private static final String EXPIRED = "SELECT id FROM invitations WHERE expireDate<=? ORDER BY expireDate LIMIT ?;";
+    private static final String DELETE_EXPIRED = "DELETE FROM invitations WHERE expireDate<=? AND id IN (";
 
     private static final InvitationMapper MAPPER = InvitationMapper.getInstance();
 
     @Autowired
     JdbcTemplate template;
 
+    /**
+     * Whether the table is partitioned by {@link ExpiryBuckets} or not. Determined on first use.
+     */
+    private volatile Boolean partitioned;
+
+    /**
+     * The UPDATE statements per set of updated fields
+     */
+    private final Map<Set<InvitationField>, String> updateStatements = new ConcurrentHashMap<>();
+
     /**
      * Stores or updates the given {@link InvitationEntity}
      *
@@ -109,14 +128,20 @@ public class MysqlInvitationStorage implements InvitationStorage {
 
             StringBuilder sql = new StringBuilder(INSERT);
             sql.append(MAPPER.getColumns(fields));
-            sql.append(") VALUES (").append(MAPPER.getParameters(fields)).append(");");
+            if (isPartitioned()) {
+                sql.append(",").append(ExpiryBuckets.COLUMN);
+            }
+            sql.append(") VALUES (").append(MAPPER.getParameters(fields)).append(isPartitioned() ? ",?);" : ");");
 
             return template.execute(sql.toString(), new PreparedStatementCallback<InvitationEntity>() {
 
                 @Override
                 public InvitationEntity doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
                     try {
-                        MAPPER.setParameters(ps, invitation, fields);
+                        int index = MAPPER.setParameters(ps, 1, invitation, fields);
+                        if (isPartitioned()) {
+                            ps.setInt(index, ExpiryBuckets.of(invitation.getExpireDate()));
+                        }
                         ps.execute();
                     } catch (CoiServiceException e) {
                         throw asDataAccessException(e, "Unable to set parameters.");
@@ -124,26 +149,64 @@ public class MysqlInvitationStorage implements InvitationStorage {
                     return invitation;
                 }
             });
-        } else {
-            StringBuilder sql = new StringBuilder(UPDATE);
-            sql.append(MAPPER.getAssignments(fields));
-            sql.append(" WHERE id=?;");
-            return template.execute(sql.toString(), new PreparedStatementCallback<InvitationEntity>() {
+        }
+        Set<InvitationField> changed = EnumSet.noneOf(InvitationField.class);
+        Collections.addAll(changed, fields);
+        changed.remove(InvitationField.id);
+        return update(invitation, changed);
+    }
 
-                @Override
-                public InvitationEntity doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                    try {
-                        int index = 1;
-                        index = MAPPER.setParameters(ps, index, invitation, fields);
-                        ps.setString(index, invitation.getId());
-                        ps.execute();
-                    } catch (CoiServiceException e) {
-                        throw asDataAccessException(e, "Unable to set parameters.");
+    @Override
+    public InvitationEntity update(InvitationEntity original, InvitationEntity invitation) throws CoiServiceException {
+        Set<InvitationField> changed = EnumSet.noneOf(InvitationField.class);
+        Collections.addAll(changed, MAPPER.getDifferentFields(original, invitation));
+        changed.remove(InvitationField.id);
+        if (changed.isEmpty()) {
+            // Nothing to write
+            return invitation;
+        }
+        return update(invitation, changed);
+    }
+
+    /**
+     * Updates the given fields of the {@link InvitationEntity}
+     *
+     * @param invitation The {@link InvitationEntity} to update
+     * @param changed The fields to update
+     * @return The updated {@link InvitationEntity}
+     * @throws CoiServiceException If the {@link InvitationEntity} couldn't be updated
+     */
+    private InvitationEntity update(InvitationEntity invitation, Set<InvitationField> changed) throws CoiServiceException {
+        InvitationField[] fields = changed.toArray(new InvitationField[changed.size()]);
+        // Moves the entry to the partition of its new expiry
+        boolean bucket = isPartitioned() && changed.contains(InvitationField.expireDate);
+        String sql = updateStatements.get(changed);
+        if (sql == null) {
+            StringBuilder builder = new StringBuilder(UPDATE);
+            builder.append(MAPPER.getAssignments(fields));
+            if (bucket) {
+                builder.append(",").append(ExpiryBuckets.COLUMN).append("=?");
+            }
+            sql = builder.append(" WHERE id=?;").toString();
+            updateStatements.put(changed, sql);
+        }
+        return template.execute(sql, new PreparedStatementCallback<InvitationEntity>() {
+
+            @Override
+            public InvitationEntity doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                try {
+                    int index = MAPPER.setParameters(ps, 1, invitation, fields);
+                    if (bucket) {
+                        ps.setInt(index++, ExpiryBuckets.of(invitation.getExpireDate()));
                     }
-                    return invitation;
+                    ps.setBytes(index, UUIDs.toBytes(invitation.getId()));
+                    ps.execute();
+                } catch (CoiServiceException e) {
+                    throw asDataAccessException(e, "Unable to set parameters.");
                 }
-            });
-        }
+                return invitation;
+            }
+        });
     }
 
     /**
@@ -155,7 +218,7 @@ public class MysqlInvitationStorage implements InvitationStorage {
         template.execute(DELETE, new PreparedStatementCallback<Void>() {
             @Override
             public Void doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                ps.setString(1, invitation.getId());
+                ps.setBytes(1, UUIDs.toBytes(invitation.getId()));
                 ps.execute();
                 return null;
             }
@@ -169,7 +232,11 @@ public class MysqlInvitationStorage implements InvitationStorage {
      * @return An {@link Optional} {@link InvitationEntity}
      */
     public Optional<InvitationEntity> getById(String id) {
-        return template.query(SELECT, (ps) -> ps.setString(1, id), new ResultSetExtractor<Optional<InvitationEntity>>() {
+        Optional<UUID> uuid = UUIDs.parse(id);
+        if (uuid.isPresent() == false) {
+            return Optional.empty();
+        }
+        return template.query(SELECT, (ps) -> ps.setBytes(1, UUIDs.toBytes(uuid.get())), new ResultSetExtractor<Optional<InvitationEntity>>() {
 
             @Override
             public Optional<InvitationEntity> extractData(ResultSet rs) throws SQLException, DataAccessException {
@@ -198,6 +265,20 @@ public class MysqlInvitationStorage implements InvitationStorage {
         return MAPPER.fromResultSet(rs, MAPPER.getMappedFields());
     }
 
+    /**
+     * Checks whether the table is partitioned by {@link ExpiryBuckets}
+     *
+     * @return <code>true</code> if the table is partitioned, <code>false</code> otherwise
+     */
+    private boolean isPartitioned() {
+        Boolean result = partitioned;
+        if (result == null) {
+            result = Boolean.valueOf(ExpiryBuckets.isPartitioned(template, "invitations"));
+            partitioned = result;
+        }
+        return result.booleanValue();
+    }
+
     /**
      * Wraps the given exception in a {@link DataAccessException}
      *
@@ -211,19 +292,29 @@ public class MysqlInvitationStorage implements InvitationStorage {
         };
     }
 
-    /**
-     * Removes all expired {@link InvitationEntity}s
-     *
-     * @param date The date to check
-     * @return The number of deleted {@link InvitationEntity}s
-     */
-    public int cleanup(Date date) {
-        return template.execute(CLEAN, new PreparedStatementCallback<Integer>() {
+    @Override
+    public List<String> getExpired(Date date, int limit) {
+        return template.query(EXPIRED, (ps) -> {
+            ps.setTimestamp(1, new Timestamp(date.getTime()));
+            ps.setInt(2, limit);
+        }, (rs, rowNum) -> UUIDs.fromBytes(rs.getBytes(1)).toString());
+    }
 
-            @Override
-            public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                ps.setTimestamp(1, new Timestamp(date.getTime()));
-                return ps.executeUpdate();
+    @Override
+    public int deleteExpired(List<String> ids, Date date) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder(DELETE_EXPIRED);
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(");");
+        return template.update(sql.toString(), (ps) -> {
+            ps.setTimestamp(1, new Timestamp(date.getTime()));
+            int index = 2;
+            for (String id : ids) {
+                ps.setBytes(index++, UUIDs.toBytes(id));
             }
         });
     }
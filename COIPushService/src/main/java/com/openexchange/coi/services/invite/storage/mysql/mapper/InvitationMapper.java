@@ -57,6 +57,7 @@ import com.openexchange.coi.services.util.mapper.DbMapping;
 import com.openexchange.coi.services.util.mapper.DefaultDbMapper;
 import com.openexchange.coi.services.util.mapper.mapping.BinaryMapping;
 import com.openexchange.coi.services.util.mapper.mapping.DateMapping;
+import com.openexchange.coi.services.util.mapper.mapping.UUIDMapping;
 import com.openexchange.coi.services.util.mapper.mapping.VarCharMapping;
 
 /**
@@ -91,11 +92,11 @@ public class InvitationMapper extends DefaultDbMapper<InvitationEntity, Invitati
         EnumMap<InvitationField, DbMapping<? extends Object, InvitationEntity>> mappings = new EnumMap<InvitationField, DbMapping<? extends Object, InvitationEntity>>(InvitationField.class);
 
         // @formatter:off
-        mappings.put(InvitationField.id, new VarCharMapping<InvitationEntity>(InvitationField.id.getColumnName(), 
-                                                                              "ID", 
-                                                                              (invitation) -> invitation.getId() != null, 
-                                                                              (invitation) -> invitation.getId(), 
-                                                                              (invitation, value) -> invitation.setId(value)));
+        mappings.put(InvitationField.id, new UUIDMapping<InvitationEntity>(InvitationField.id.getColumnName(), 
+                                                                           "ID", 
+                                                                           (invitation) -> invitation.getId() != null, 
+                                                                           (invitation) -> invitation.getId(), 
+                                                                           (invitation, value) -> invitation.setId(value)));
 
         mappings.put(InvitationField.name, new VarCharMapping<InvitationEntity>(InvitationField.name.getColumnName(), 
                                                                                 "Name", 
@@ -91,4 +91,11 @@ public class PushConfiguration {
     @Setter
     public boolean vapid = true;
 
+    /**
+     * The maximum number of push messages within a single push batch
+     */
+    @Getter
+    @Setter
+    public int maxBatchSize = 1000;
+
 }
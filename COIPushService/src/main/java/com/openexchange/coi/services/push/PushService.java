@@ -49,40 +49,32 @@
 
 package com.openexchange.coi.services.push;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.caffeine.CaffeineCache;
-import org.springframework.cache.support.SimpleCacheManager;
-import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.openexchange.coi.services.Profiles;
 import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
 import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.PushResourceCache;
 import com.openexchange.coi.services.push.storage.PushResourceStorage;
+import com.openexchange.coi.services.push.storage.PushResourceTouchBuffer;
 import com.openexchange.coi.services.push.storage.mysql.entities.PushResourceImpl;
 import com.openexchange.coi.services.push.transport.PushTransport;
 import com.openexchange.coi.services.push.transport.PushTransportRegistry;
 import com.openexchange.coi.services.util.ErrorAwareBiConsumer;
-import com.openexchange.coi.services.util.caching.CacheConfig;
-import com.openexchange.coi.services.util.caching.CacheProvider;
-import com.openexchange.coi.services.util.caching.DeactivatableCache;
-import lombok.Getter;
-import lombok.Setter;
 
 /**
  * {@link PushService}
@@ -92,23 +84,7 @@ import lombok.Setter;
  */
 @Service
 @Profile(Profiles.PUSH)
-@Configuration
-@ConfigurationProperties(prefix = "com.openexchange.coi.services.cache")
-public class PushService implements CacheProvider, CacheConfig {
-
-    private static final String CACHE_KEY = "resource";
-
-    @Getter
-    @Setter
-    private boolean enabled = false;
-
-    @Getter
-    @Setter
-    private long max = 100000;
-
-    @Getter
-    @Setter
-    private long expire = 60;
+public class PushService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PushService.class);
 
@@ -121,6 +97,12 @@ public class PushService implements CacheProvider, CacheConfig {
     @Autowired
     private PushResourceStorage resourceStorage;
 
+    @Autowired
+    private PushResourceCache resourceCache;
+
+    @Autowired
+    private PushResourceTouchBuffer touchBuffer;
+
     @Autowired(required = false)
     private List<PushServiceCallback> callbacks;
 
@@ -156,6 +138,129 @@ public class PushService implements CacheProvider, CacheConfig {
         }
     }
 
+    /**
+     * Sends the push message to the device without blocking the calling thread
+     *
+     * @param resource The {@link PushResource}
+     * @param message The message received from the COI server
+     * @return A {@link CompletableFuture} which is completed once the message is sent or completed exceptionally with a {@link CoiServiceException} in case of errors
+     */
+    public CompletableFuture<Void> sendPushToDeviceAsync(PushResource resource, byte[] message) {
+        Optional<PushTransport> opt = registry.getTransportForName(resource.getTransport());
+        if (opt.isPresent() == false) {
+            return CompletableFuture.failedFuture(CoiServiceExceptionCodes.INVALID_TRANSPORT.create(resource.getTransport()));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Sending push message for {} resource with id {}", resource.isValid() ? "validated" : "un-validated", resource.getId());
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        opt.get().transportAsync(resource.getPushToken(), resource.isValid(), message).whenComplete((v, t) -> {
+            if (t == null) {
+                result.complete(null);
+                return;
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof CoiServiceException) {
+                CoiServiceException e = (CoiServiceException) cause;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to send push message for resource {} because {}", resource.getId(), e.getMessage());
+                }
+                if (CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.equals(e)) {
+                    // The push token is invalid. Push resource must be removed and the client needs to re-register.
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Push token for resource {} is invalid and is going to be removed.", resource.getId());
+                    }
+                    try {
+                        delete(resource);
+                    } catch (CoiServiceException | RuntimeException deleteError) {
+                        LOG.warn("Unable to remove push resource {} with an invalid push token", resource.getId(), deleteError);
+                    }
+                }
+            }
+            result.completeExceptionally(cause);
+        });
+        return result;
+    }
+
+    /**
+     * Sends the same push message to many devices without blocking the calling thread. The devices are grouped by their transport and each group
+     * is sent as a single multicast message.
+     *
+     * @param resources The {@link PushResource}s
+     * @param message The message received from the COI server
+     * @return A {@link CompletableFuture} which is completed with the errors per push resource id. Push resources without an entry have been sent successfully.
+     */
+    public CompletableFuture<Map<String, CoiServiceException>> sendMulticastAsync(List<PushResource> resources, byte[] message) {
+        Map<String, CoiServiceException> errors = new ConcurrentHashMap<>();
+        Map<String, List<PushResource>> groups = new LinkedHashMap<>();
+        for (PushResource resource : resources) {
+            // The un-validated push resources need a different message
+            groups.computeIfAbsent(resource.getTransport() + "/" + resource.isValid(), k -> new ArrayList<>()).add(resource);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(groups.size());
+        for (List<PushResource> group : groups.values()) {
+            PushResource first = group.get(0);
+            Optional<PushTransport> opt = registry.getTransportForName(first.getTransport());
+            if (opt.isPresent() == false) {
+                group.forEach(r -> errors.put(r.getId(), CoiServiceExceptionCodes.INVALID_TRANSPORT.create(r.getTransport())));
+                continue;
+            }
+            List<String> tokens = new ArrayList<>(group.size());
+            group.forEach(r -> tokens.add(r.getPushToken()));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Sending multicast push message to {} {} resources", Integer.valueOf(group.size()), first.isValid() ? "validated" : "un-validated");
+            }
+            futures.add(opt.get().transportMulticast(tokens, first.isValid(), message).handle((result, t) -> {
+                for (int i = 0; i < group.size(); i++) {
+                    CoiServiceException e;
+                    if (t != null) {
+                        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                        e = cause instanceof CoiServiceException ? (CoiServiceException) cause : CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(cause.getMessage());
+                    } else {
+                        e = result.get(i);
+                    }
+                    if (e != null) {
+                        handleMulticastError(group.get(i), e);
+                        errors.put(group.get(i).getId(), e);
+                    }
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> errors);
+    }
+
+    /**
+     * Removes the push resource in case the push token is invalid
+     *
+     * @param resource The {@link PushResource}
+     * @param e The error
+     */
+    private void handleMulticastError(PushResource resource, CoiServiceException e) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to send push message for resource {} because {}", resource.getId(), e.getMessage());
+        }
+        if (CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.equals(e)) {
+            // The push token is invalid. Push resource must be removed and the client needs to re-register.
+            try {
+                delete(resource);
+            } catch (CoiServiceException | RuntimeException deleteError) {
+                LOG.warn("Unable to remove push resource {} with an invalid push token", resource.getId(), deleteError);
+            }
+        }
+    }
+
+    /**
+     * Finds the push resources with the given ids. Push resources are served from the cache if possible and only the missing ones are loaded
+     * from the storage at once.
+     *
+     * @param ids The ids of the {@link PushResource}s
+     * @return The existing {@link PushResource}s in no particular order
+     */
+    public List<PushResource> findByIds(Collection<String> ids) {
+        return new ArrayList<>(resourceCache.getAll(ids));
+    }
+
     /**
      * Finds a push resource by its id
      *
@@ -163,9 +268,8 @@ public class PushService implements CacheProvider, CacheConfig {
      * @return The {@link PushResourceImpl}
      * @throws CoiServiceException in case no {@link PushResourceImpl} with the given id exists
      */
-    @Cacheable(value = CACHE_KEY, key = "#id")
     public PushResource findById(String id) throws CoiServiceException {
-        Optional<PushResource> result = resourceStorage.getById(id);
+        Optional<PushResource> result = resourceCache.get(id);
         return result.orElseThrow(() -> CoiServiceExceptionCodes.MISSING_PUSH_RESOURCE.create(id));
     }
 
@@ -176,23 +280,48 @@ public class PushService implements CacheProvider, CacheConfig {
      * @return The saved push resource
      * @throws CoiServiceException
      */
-    @CachePut(value = CACHE_KEY, key = "#result.getId()", unless = "#result == null")
     public PushResource save(PushResource res) throws CoiServiceException {
         runCallback(res, (calback, resource) -> calback.beforeSave(Optional.empty(), resource));
-        return resourceStorage.save(res);
+        if (res.getId() != null) {
+            touchBuffer.flush(res.getId());
+        }
+        PushResource result = resourceStorage.save(res);
+        resourceCache.put(result);
+        return result;
     }
 
     /**
-     * Updates the given push resource
+     * Updates the given push resource. Only the properties which differ from the old push resource are written.
      *
+     * @param old The push resource before the changes
      * @param res The push resource to save
      * @return The saved push resource
      * @throws CoiServiceException
      */
-    @CachePut(value = CACHE_KEY, key = "#result.getId()", unless = "#result == null")
     public PushResource update(PushResource old, PushResource res) throws CoiServiceException {
         runCallback(res, (calback, resource) -> calback.beforeSave(Optional.of(old), resource));
-        return resourceStorage.save(res);
+        touchBuffer.flush(res.getId());
+        PushResource result = resourceStorage.update(old, res);
+        resourceCache.put(result);
+        return result;
+    }
+
+    /**
+     * Touches the given push resource, i.e. writes its validation flag, expiry date and last modified date. Other changes of the push resource
+     * are not written.
+     * <p>
+     * The write might be deferred by the {@link PushResourceTouchBuffer}, while the cached push resource is updated immediately.
+     *
+     * @param old The push resource before the changes or <code>null</code> if unknown
+     * @param res The changed push resource
+     * @return The touched push resource
+     * @throws CoiServiceException In case of errors
+     */
+    public PushResource touch(PushResource old, PushResource res) throws CoiServiceException {
+        runCallback(res, (calback, resource) -> calback.beforeSave(Optional.ofNullable(old), resource));
+        touchBuffer.touch(res);
+        resourceCache.put(res);
+        return res;
     }
 
     /**
@@ -218,10 +347,11 @@ public class PushService implements CacheProvider, CacheConfig {
      * @param res The push resource to delete
      * @throws CoiServiceException in case of errors
      */
-    @CacheEvict(value = CACHE_KEY, key = "#res.getId()")
     public void delete(PushResource res) throws CoiServiceException {
         runCallback(res, (calback, resource) -> calback.beforeDelete(resource));
+        touchBuffer.flush(res.getId());
         resourceStorage.delete(res);
+        resourceCache.remove(res.getId());
     }
 
     /**
@@ -249,14 +379,4 @@ public class PushService implements CacheProvider, CacheConfig {
         return resourceStorage.list(from, to);
     }
 
-    @Override
-    public CacheManager getCacheManager() {
-        SimpleCacheManager result = new SimpleCacheManager();
-        Cache<Object, Object> cache = Caffeine.newBuilder().maximumSize(max).expireAfterWrite(expire, TimeUnit.MINUTES).build();
-        CaffeineCache caffeineCache = new CaffeineCache(CACHE_KEY, cache, false);
-        result.setCaches(Collections.singleton(new DeactivatableCache(this, caffeineCache)));
-        result.afterPropertiesSet();
-        return result;
-    }
-
 }
@@ -0,0 +1,105 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.crypto;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import com.openexchange.coi.services.Profiles;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link CryptoPoolConfiguration} provides the configuration for the worker pool verifying VAPID signatures
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.push.vapid.pool")
+@Profile(Profiles.PUSH)
+public class CryptoPoolConfiguration {
+
+    /**
+     * Whether VAPID signatures are verified by the worker pool or by the request threads
+     */
+    @Getter
+    @Setter
+    private boolean enabled = false;
+
+    /**
+     * The number of worker threads or 0 to use one per available processor
+     */
+    @Getter
+    @Setter
+    private int workers = 0;
+
+    /**
+     * The maximum number of verifications waiting for a worker
+     */
+    @Getter
+    @Setter
+    private int queueSize = 1000;
+
+    /**
+     * The time in seconds a coi server is asked to wait before retrying in case the queue is full
+     */
+    @Getter
+    @Setter
+    private int retryAfter = 1;
+
+    /**
+     * The time in milliseconds a request waits for its verification before it is rejected like in case of a full queue
+     */
+    @Getter
+    @Setter
+    private long timeout = 5000;
+
+}
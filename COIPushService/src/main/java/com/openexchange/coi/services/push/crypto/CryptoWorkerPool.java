@@ -0,0 +1,200 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.crypto;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link CryptoWorkerPool} runs CPU intensive signature verifications on a bounded pool sized to the number of processors, so that a burst of
+ * verifications doesn't starve requests which are served from the caches.
+ * <p>
+ * In case all workers are busy and the queue is full, verifications are rejected immediately.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Profile(Profiles.PUSH)
+public class CryptoWorkerPool {
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.crypto";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+    private static final String POOL = "pool";
+    private static final String POOL_NAME = "vapid";
+
+    /**
+     * {@link CryptoTask} - A verification to run by the pool
+     *
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    public interface CryptoTask<T> {
+
+        /**
+         * Runs the verification
+         *
+         * @return The result
+         * @throws CoiServiceException In case of errors
+         */
+        T call() throws CoiServiceException;
+    }
+
+    private final CryptoPoolConfiguration config;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer waitTimer;
+    private final Timer timer;
+    private final Counter rejectedCounter;
+    private final Counter timeoutCounter;
+
+    /**
+     * Initializes a new {@link CryptoWorkerPool}.
+     *
+     * @param config The {@link CryptoPoolConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public CryptoWorkerPool(CryptoPoolConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        int workers = config.getWorkers() > 0 ? config.getWorkers() : Runtime.getRuntime().availableProcessors();
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueSize()));
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, queue, new CustomizableThreadFactory("crypto-worker-"), new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder(METRIC_NAME, queue, Collection::size).tag(METRIC_TYPE, "depth").tag(POOL, POOL_NAME).register(registry);
+        Gauge.builder(METRIC_NAME, executor, ThreadPoolExecutor::getActiveCount).tag(METRIC_TYPE, "active").tag(POOL, POOL_NAME).register(registry);
+        waitTimer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "wait").tag(POOL, POOL_NAME).register(registry);
+        timer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "timer").tag(POOL, POOL_NAME).register(registry);
+        rejectedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(POOL, POOL_NAME).tag(TYPE, "rejected").register(registry);
+        timeoutCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(POOL, POOL_NAME).tag(TYPE, "timeout").register(registry);
+    }
+
+    /**
+     * Runs the given task on the pool and waits for its result. The task runs on the calling thread in case the pool is disabled.
+     *
+     * @param task The {@link CryptoTask}
+     * @return The result of the task
+     * @throws CoiServiceException {@link CoiServiceExceptionCodes#VERIFICATION_QUEUE_FULL} in case the queue is full or the task doesn't complete
+     *             in time or any error of the task
+     */
+    public <T> T execute(CryptoTask<T> task) throws CoiServiceException {
+        if (config.isEnabled() == false) {
+            return task.call();
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                waitTimer.record(start - enqueued, NANOSECONDS);
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) {
+                    // Also errors, the caller would wait forever otherwise
+                    result.completeExceptionally(t);
+                } finally {
+                    timer.record(System.nanoTime() - start, NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw CoiServiceExceptionCodes.VERIFICATION_QUEUE_FULL.create(Integer.valueOf(config.getRetryAfter()));
+        }
+        try {
+            return result.get(config.getTimeout(), MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeoutCounter.increment();
+            throw CoiServiceExceptionCodes.VERIFICATION_QUEUE_FULL.create(Integer.valueOf(config.getRetryAfter()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CoiServiceException) {
+                throw (CoiServiceException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * Stops accepting new verifications. Queued verifications are still processed, since their callers wait for them.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+}
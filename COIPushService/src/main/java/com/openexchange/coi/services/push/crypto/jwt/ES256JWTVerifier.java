@@ -0,0 +1,192 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.crypto.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.nimbusds.jose.util.JSONObjectUtils;
+
+/**
+ * {@link ES256JWTVerifier} verifies ES256 signed VAPID JWTs as described in RFC 8292.
+ * <p>
+ * In contrast to the {@link JWTHandler} the verifier is meant to be long-living and shared between threads. It verifies the signature directly
+ * on the compact serialization of the JWT with a {@link Signature} which is reused per thread and checks the <code>exp</code> and
+ * <code>aud</code> claims against the expected audience given on construction.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class ES256JWTVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ES256JWTVerifier.class);
+
+    private static final String ALGORITHM = "ES256";
+
+    /**
+     * Verifies an ECDSA signature in the R || S format used by JWS instead of the DER format
+     */
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSAinP1363Format";
+
+    /**
+     * "vapid authentication is invalid if [...] the current time is later than the time identified in the "exp" (Expiry) claim or more than 24
+     * hours before the expiry time" - (RFC 8292 - 4.2. Using Restricted Subscriptions)
+     */
+    private static final long MAX_VALIDITY = Duration.ofHours(24).toMillis();
+
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(SIGNATURE_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final String audience;
+
+    /**
+     * Initializes a new {@link ES256JWTVerifier}.
+     *
+     * @param audience The expected value of the "aud" claim
+     */
+    public ES256JWTVerifier(String audience) {
+        super();
+        this.audience = audience;
+    }
+
+    /**
+     * Verifies the given JWT
+     *
+     * @param jwt The JWT in compact serialization
+     * @param publicKey The {@link PublicKey} used for signature validation
+     * @return The {@link JWTValidationResult} representing the result of the validation
+     */
+    public JWTValidationResult verify(String jwt, PublicKey publicKey) {
+        int headerEnd = jwt.indexOf('.');
+        int payloadEnd = headerEnd < 0 ? -1 : jwt.indexOf('.', headerEnd + 1);
+        if (payloadEnd < 0 || jwt.indexOf('.', payloadEnd + 1) >= 0) {
+            return failure("Error while parsing JWT token: Invalid serialized JWT object");
+        }
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        try {
+            Map<String, Object> header = JSONObjectUtils.parse(new String(decoder.decode(jwt.substring(0, headerEnd)), StandardCharsets.UTF_8));
+            if (ALGORITHM.equals(header.get("alg")) == false) {
+                return failure("The JWT is rejected because the required claims are not satisfied: Signed JWT rejected: Another algorithm expected");
+            }
+            if (header.containsKey("crit")) {
+                return failure("The JWT is rejected because the required claims are not satisfied: Signed JWT rejected: Unsupported critical header parameters");
+            }
+
+            Signature signature = SIGNATURE.get();
+            signature.initVerify(publicKey);
+            signature.update(jwt.getBytes(StandardCharsets.US_ASCII), 0, payloadEnd);
+            if (signature.verify(decoder.decode(jwt.substring(payloadEnd + 1))) == false) {
+                return failure("The JWT is rejected because the required claims are not satisfied: Signed JWT rejected: Invalid signature");
+            }
+
+            Map<String, Object> claims = JSONObjectUtils.parse(new String(decoder.decode(jwt.substring(headerEnd + 1, payloadEnd)), StandardCharsets.UTF_8));
+            return verifyClaims(claims);
+        } catch (ParseException | IllegalArgumentException e) {
+            return failure(String.format("Error while parsing JWT token: %s", e.getMessage()));
+        } catch (GeneralSecurityException e) {
+            // E.g. an invalid encoded signature
+            return failure("The JWT is rejected because the required claims are not satisfied: Signed JWT rejected: Invalid signature");
+        }
+    }
+
+    /**
+     * Checks the "exp" and "aud" claims
+     *
+     * @param claims The claims of the JWT
+     * @return The {@link JWTValidationResult}
+     */
+    private JWTValidationResult verifyClaims(Map<String, Object> claims) {
+        Object exp = claims.get("exp");
+        if (exp instanceof Number == false) {
+            return failure("The JWT is rejected because the required claims are not satisfied: The \"exp\" claim is missing in the provided JWT.");
+        }
+        long expirationTime = ((Number) exp).longValue() * 1000;
+        long now = System.currentTimeMillis();
+        if (now > expirationTime) {
+            return failure("The JWT is rejected because the required claims are not satisfied: The \"exp\" claim from the the provided JWT is expired.");
+        }
+        if (now < expirationTime - MAX_VALIDITY) {
+            return failure("The JWT is rejected because the required claims are not satisfied: The \"exp\" claim from the the provided JWT is more than 24h in future.");
+        }
+
+        Object aud = claims.get(JWTHandler.AUD_CLAIM);
+        if (aud instanceof List && ((List<?>) aud).size() == 1) {
+            aud = ((List<?>) aud).get(0);
+        }
+        if (aud == null) {
+            return failure("The JWT is rejected because the required claims are not satisfied: Missing required JWT claim \"" + JWTHandler.AUD_CLAIM + "\"");
+        }
+        if (audience.equals(aud) == false) {
+            return failure("The JWT is rejected because the required claims are not satisfied: The claim \"" + JWTHandler.AUD_CLAIM + "\" does not have the expected value of " + audience + ". Was: " + aud);
+        }
+        return JWTValidationResult.successResult(new Date(expirationTime));
+    }
+
+    private static JWTValidationResult failure(String message) {
+        LOG.error(message);
+        return JWTValidationResult.failureResult(message);
+    }
+
+}
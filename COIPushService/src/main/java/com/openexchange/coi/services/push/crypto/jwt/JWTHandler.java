@@ -126,7 +126,7 @@ public class JWTHandler {
                     }
                 }
             });
-            jwtProcessor.process(jwtString, null);
+            return JWTValidationResult.successResult(jwtProcessor.process(jwtString, null).getExpirationTime());
         } catch (ParseException | JOSEException e) {
             final JWTValidationResult failureResult = JWTValidationResult.failureResult(String.format("Error while parsing JWT token: %s", e.getMessage()));
             LOG.error(failureResult.getMessage());
@@ -136,6 +136,5 @@ public class JWTHandler {
             LOG.error(failureResult.getMessage());
             return failureResult;
         }
-        return JWTValidationResult.successResult();
     }
 }
@@ -1,5 +1,7 @@
 package com.openexchange.coi.services.push.crypto.jwt;
 
+import java.util.Date;
+
 /**
  * Represents a result of a JWT validation
  * 
@@ -19,6 +21,7 @@ public class JWTValidationResult {
 
 	private ResultType resultType;
 	private String message = "success";
+	private Date expirationTime;
 
 	/**
 	 * Gets a default Success result
@@ -29,6 +32,18 @@ public class JWTValidationResult {
 		return SUCCESS_RESULT;
 	}
 
+	/**
+	 * Creates a success result for a JWT with the given expiration time
+	 * 
+	 * @param expirationTime The value of the "exp" claim or <code>null</code>
+	 * @return The new success result
+	 */
+	public static JWTValidationResult successResult(Date expirationTime) {
+		JWTValidationResult result = new JWTValidationResult(ResultType.SUCCESS);
+		result.expirationTime = expirationTime;
+		return result;
+	}
+
 	/**
 	 * Creates a failure result
 	 * 
@@ -94,4 +109,13 @@ public class JWTValidationResult {
 	public String getMessage() {
 		return message;
 	}
+
+	/**
+	 * Gets the value of the "exp" claim of a successfully validated JWT
+	 * 
+	 * @return The expiration time or <code>null</code>
+	 */
+	public Date getExpirationTime() {
+		return expirationTime;
+	}
 }
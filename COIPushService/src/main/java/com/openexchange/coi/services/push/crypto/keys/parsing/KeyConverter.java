@@ -11,6 +11,11 @@ import java.util.Arrays;
  */
 public final class KeyConverter {
 
+    /**
+     * The length of an uncompressed X.962 point of a P-256 key
+     */
+    public static final int X962_LENGTH = 65;
+
     private static final byte[] DER_HEADER = hexStringToByteArray("3059301306072a8648ce3d020106082a8648ce3d030107034200");
 
     private static byte[] hexStringToByteArray(String s) {
@@ -49,4 +54,24 @@ public final class KeyConverter {
         }
         return false;
     }
+
+    /**
+     * Converts a DER encoded key into the X.962 format by just removing the DER header.
+     * 
+     * @param key The key
+     * @return The X.962 key, or the given key if it has no DER header
+     */
+    public static byte[] DERToX962(byte[] key) {
+        return hasDERHeader(key) ? Arrays.copyOfRange(key, DER_HEADER.length, key.length) : key;
+    }
+
+    /**
+     * Converts a X.962 key into DER format unless it already has a DER header.
+     * 
+     * @param key The key
+     * @return The DER encoded key
+     */
+    public static byte[] toDER(byte[] key) {
+        return hasDERHeader(key) ? key : X962ToDER(key);
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.crypto.keys.parsing;
+
+import java.security.MessageDigest;
+import java.security.PublicKey;
+
+/**
+ * {@link ParsedPublicKey} holds a parsed {@link PublicKey} along with its uncompressed X.962 point, which is the form push resources store the
+ * public key in.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public final class ParsedPublicKey {
+
+    private final PublicKey key;
+    private final byte[] point;
+
+    /**
+     * Initializes a new {@link ParsedPublicKey}.
+     *
+     * @param key The {@link PublicKey}
+     */
+    public ParsedPublicKey(PublicKey key) {
+        super();
+        this.key = key;
+        this.point = KeyConverter.DERToX962(key.getEncoded());
+    }
+
+    /**
+     * Gets the {@link PublicKey}
+     *
+     * @return The {@link PublicKey}
+     */
+    public PublicKey getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the X.962 point of the key
+     *
+     * @return A copy of the X.962 point
+     */
+    public byte[] getPoint() {
+        return point.clone();
+    }
+
+    /**
+     * Checks in constant time whether the given stored key is the same key
+     *
+     * @param storedKey The stored key, either the X.962 point or the DER encoded key
+     * @return <code>true</code> if it is the same key, <code>false</code> otherwise
+     */
+    public boolean matches(byte[] storedKey) {
+        return MessageDigest.isEqual(point, KeyConverter.DERToX962(storedKey));
+    }
+
+}
@@ -32,6 +32,12 @@ public class PublicKeyParser {
         new DERHeaderTransformer());
     //@formatter:on
 
+    /**
+     * {@link KeyFactory#getInstance(String)} walks the registered providers on each call. {@link KeyFactory}s aren't thread-safe, so they are reused
+     * per thread.
+     */
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = new ThreadLocal<>();
+
     private final List<KeyMaterialTransformer> keyMaterialHandler;
 
     /***
@@ -53,14 +59,28 @@ public class PublicKeyParser {
     private PublicKey createPublicKeyFromDER(byte[] keyMaterial) throws CoiServiceException {
         try {
             X509EncodedKeySpec spec = new X509EncodedKeySpec(keyMaterial);
-            KeyFactory factory = KeyFactory.getInstance("EC");
-            PublicKey privateKey = factory.generatePublic(spec);
+            PublicKey privateKey = getKeyFactory().generatePublic(spec);
             return privateKey;
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
             throw CoiServiceExceptionCodes.INVALID_PUBLIC_KEY.create();
         }
     }
 
+    /**
+     * Gets the EC {@link KeyFactory} of the current thread
+     *
+     * @return The {@link KeyFactory}
+     * @throws NoSuchAlgorithmException If EC isn't supported
+     */
+    private static KeyFactory getKeyFactory() throws NoSuchAlgorithmException {
+        KeyFactory factory = KEY_FACTORY.get();
+        if (factory == null) {
+            factory = KeyFactory.getInstance("EC");
+            KEY_FACTORY.set(factory);
+        }
+        return factory;
+    }
+
     /**
      * Transforms the given key material with all known {@link KeyMaterialTransformer}
      * 
@@ -0,0 +1,259 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.dispatch;
+
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.storage.PushResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link PushCoalescer} holds back push messages for a short window and only sends the latest push message per push resource and topic.
+ * <p>
+ * This follows the message replacement of RFC 8030: a push message replaces a pending push message to the same push resource with the same
+ * <code>Topic</code>. Push messages without a topic are never replaced and must be sent immediately.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Profile(Profiles.PUSH)
+public class PushCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushCoalescer.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.coalesce";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+    private static final String APP = "app";
+
+    /**
+     * RFC 8030: a topic must not exceed 32 characters of the URL and filename safe base64 alphabet
+     */
+    private static final Pattern TOPIC = Pattern.compile("[A-Za-z0-9_\\-]{1,32}");
+
+    private final CoalescingConfiguration config;
+    private final MeterRegistry registry;
+    private final Map<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired
+    private PushDispatcher dispatcher;
+
+    /**
+     * Initializes a new {@link PushCoalescer}.
+     *
+     * @param config The {@link CoalescingConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PushCoalescer(CoalescingConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        this.registry = registry;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("push-coalescer-"));
+        scheduler.setRemoveOnCancelPolicy(true);
+        Gauge.builder(METRIC_NAME, pending, Map::size).tag(METRIC_TYPE, "pending").register(registry);
+    }
+
+    /**
+     * Whether push messages should be coalesced or not
+     *
+     * @return <code>true</code> if enabled, <code>false</code> otherwise
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Checks the given value of the <code>Topic</code> header
+     *
+     * @param topic The topic or <code>null</code>
+     * @throws CoiServiceException {@link CoiServiceExceptionCodes#INVALID_TOPIC} in case the topic is invalid
+     */
+    public void checkTopic(String topic) throws CoiServiceException {
+        if (topic != null && TOPIC.matcher(topic).matches() == false) {
+            throw CoiServiceExceptionCodes.INVALID_TOPIC.create();
+        }
+    }
+
+    /**
+     * Holds back the push message. A pending push message with the same topic is replaced.
+     *
+     * @param resource The {@link PushResource}
+     * @param topic The topic or <code>null</code>
+     * @param data The message received from the COI server
+     * @return <code>true</code> if the push message is held back, <code>false</code> if the push message has no topic or the limit of held back
+     *         push messages is reached and the push message must be sent immediately
+     */
+    public boolean submit(PushResource resource, String topic, byte[] data) {
+        if (topic == null) {
+            // Only push messages with the same topic replace each other
+            return false;
+        }
+        Key key = new Key(resource.getId(), topic);
+        boolean[] replaced = new boolean[1];
+        Pending result = pending.compute(key, (k, p) -> {
+            if (p != null) {
+                p.data = data;
+                replaced[0] = true;
+                return p;
+            }
+            if (pending.size() >= config.getMaxPending()) {
+                return null;
+            }
+            return new Pending(resource, data);
+        });
+        if (result == null) {
+            return false;
+        }
+        if (replaced[0]) {
+            count(resource, "coalesced");
+        } else {
+            scheduler.schedule(() -> flush(key, result), config.getWindow(), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Sends the latest push message of the given key
+     *
+     * @param key The key
+     * @param p The pending push message
+     */
+    private void flush(Key key, Pending p) {
+        if (pending.remove(key, p) == false) {
+            return;
+        }
+        // The push message can't be replaced anymore
+        count(p.resource, "delivered");
+        dispatcher.sendAsync(p.resource, p.data).whenComplete((v, t) -> {
+            if (t == null) {
+                return;
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof CoiServiceException) {
+                ((CoiServiceException) cause).log(LOG);
+            } else {
+                LOG.error("Unable to send coalesced push message for resource {}", p.resource.getId(), cause);
+            }
+        });
+    }
+
+    private void count(PushResource resource, String type) {
+        String app = resource.getAppId() == null ? "unknown" : resource.getAppId();
+        Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, type).tag(APP, app).register(registry).increment();
+    }
+
+    /**
+     * Sends all pending push messages immediately
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        pending.forEach(this::flush);
+    }
+
+    private static class Key {
+
+        private final String id;
+        private final String topic;
+
+        Key(String id, String topic) {
+            this.id = id;
+            this.topic = topic;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + topic.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return id.equals(other.id) && topic.equals(other.topic);
+        }
+    }
+
+    private static class Pending {
+
+        final PushResource resource;
+        volatile byte[] data;
+
+        Pending(PushResource resource, byte[] data) {
+            this.resource = resource;
+            this.data = data;
+        }
+    }
+
+}
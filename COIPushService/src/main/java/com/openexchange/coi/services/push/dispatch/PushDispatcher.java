@@ -0,0 +1,353 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+package com.openexchange.coi.services.push.dispatch;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.rest.util.Utils;
+import com.openexchange.coi.services.push.retry.RetryJournal;
+import com.openexchange.coi.services.push.storage.PushResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link PushDispatcher} hands push messages over to the {@link PushService}. Depending on the configured {@link DispatchMode} this is either done
+ * within the calling thread or by a pool of workers draining a bounded dispatch queue.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Profile(Profiles.PUSH)
+public class PushDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushDispatcher.class);
+
+    private static final String TYPE = "type";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.dispatch";
+    private static final String QUEUE = "queue";
+    private static final String QUEUE_NAME = "push";
+
+    @Autowired
+    private PushService pushService;
+
+    @Autowired
+    private Utils utils;
+
+    @Autowired
+    private RetryJournal retryJournal;
+
+    private final DispatchConfiguration config;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer waitTimer;
+    private final Timer timer;
+    private final Counter successCounter;
+    private final Counter errorCounter;
+    private final Counter rejectedCounter;
+
+    /**
+     * Initializes a new {@link PushDispatcher}.
+     *
+     * @param config The {@link DispatchConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PushDispatcher(DispatchConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        int workers = Math.max(1, config.getWorkers());
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueSize()));
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, queue, new CustomizableThreadFactory("push-dispatcher-"), new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder(METRIC_NAME, queue, Collection::size).tag(METRIC_TYPE, "depth").tag(QUEUE, QUEUE_NAME).register(registry);
+        waitTimer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "wait").tag(QUEUE, QUEUE_NAME).register(registry);
+        timer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "timer").tag(QUEUE, QUEUE_NAME).register(registry);
+        successCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(QUEUE, QUEUE_NAME).tag(TYPE, "success").register(registry);
+        errorCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(QUEUE, QUEUE_NAME).tag(TYPE, "error").register(registry);
+        rejectedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(QUEUE, QUEUE_NAME).tag(TYPE, "rejected").register(registry);
+    }
+
+    /**
+     * Whether push messages should be put into the dispatch queue or not
+     *
+     * @return <code>true</code> if the {@link DispatchMode#queued} mode is configured, <code>false</code> otherwise
+     */
+    public boolean isQueued() {
+        return DispatchMode.queued.equals(config.getMode());
+    }
+
+    /**
+     * Whether push messages should be sent asynchronously or not
+     *
+     * @return <code>true</code> if the {@link DispatchMode#async} mode is configured, <code>false</code> otherwise
+     */
+    public boolean isAsync() {
+        return DispatchMode.async.equals(config.getMode());
+    }
+
+    /**
+     * Sends the push message to the device within the calling thread and marks the push resource as validated afterwards if necessary.
+     * <p>
+     * Push messages which fail because of a transient transport error are put into the {@link RetryJournal} if enabled.
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @throws CoiServiceException In case of errors
+     */
+    public void send(PushResource resource, byte[] data) throws CoiServiceException {
+        try {
+            deliver(resource, data);
+        } catch (CoiServiceException e) {
+            if (journal(resource, data, e) == false) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sends the push message to the device without blocking the calling thread and marks the push resource as validated afterwards if necessary.
+     * <p>
+     * Push messages which fail because of a transient transport error are put into the {@link RetryJournal} if enabled.
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @return A {@link CompletableFuture} which is completed once the message is sent or completed exceptionally with a {@link CoiServiceException} in case of errors
+     */
+    public CompletableFuture<Void> sendAsync(PushResource resource, byte[] data) {
+        return deliverAsync(resource, data).exceptionally(t -> {
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (journal(resource, data, cause)) {
+                return null;
+            }
+            throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+        });
+    }
+
+    /**
+     * Sends the push message to the device within the calling thread and marks the push resource as validated afterwards if necessary
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @throws CoiServiceException In case of errors
+     */
+    public void deliver(PushResource resource, byte[] data) throws CoiServiceException {
+        pushService.sendPushToDevice(resource, data);
+        if (resource.isValid() == false) {
+            utils.setExpiryDate(resource, true);
+            resource.setValid(true);
+            pushService.touch(null, resource);
+            LOG.debug("Properly saved push resource");
+        }
+    }
+
+    /**
+     * Sends the push message to the device without blocking the calling thread and marks the push resource as validated afterwards if necessary
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @return A {@link CompletableFuture} which is completed once the message is sent or completed exceptionally with a {@link CoiServiceException} in case of errors
+     */
+    public CompletableFuture<Void> deliverAsync(PushResource resource, byte[] data) {
+        return pushService.sendPushToDeviceAsync(resource, data).thenRun(() -> {
+            if (resource.isValid() == false) {
+                try {
+                    utils.setExpiryDate(resource, true);
+                    resource.setValid(true);
+                    pushService.touch(null, resource);
+                } catch (CoiServiceException e) {
+                    throw new CompletionException(e);
+                }
+                LOG.debug("Properly saved push resource");
+            }
+        });
+    }
+
+    /**
+     * Sends the same push message to many devices without blocking the calling thread and marks the push resources as validated afterwards if
+     * necessary.
+     * <p>
+     * Push messages which fail because of a transient transport error are put into the {@link RetryJournal} if enabled.
+     *
+     * @param resources The {@link PushResource}s
+     * @param data The message received from the COI server
+     * @return A {@link CompletableFuture} which is completed with the errors per push resource id. Push resources without an entry have been sent successfully.
+     */
+    public CompletableFuture<Map<String, CoiServiceException>> multicastAsync(List<PushResource> resources, byte[] data) {
+        return pushService.sendMulticastAsync(resources, data).thenApply(errors -> {
+            for (PushResource resource : resources) {
+                CoiServiceException error = errors.get(resource.getId());
+                if (error != null) {
+                    if (journal(resource, data, error)) {
+                        errors.remove(resource.getId());
+                    }
+                    continue;
+                }
+                if (resource.isValid() == false) {
+                    try {
+                        utils.setExpiryDate(resource, true);
+                        resource.setValid(true);
+                        pushService.touch(null, resource);
+                        LOG.debug("Properly saved push resource");
+                    } catch (CoiServiceException e) {
+                        errors.put(resource.getId(), e);
+                    }
+                }
+            }
+            return errors;
+        });
+    }
+
+    /**
+     * Whether the given error is a transient transport error which is worth to be retried later on
+     *
+     * @param error The error
+     * @return <code>true</code> if the push message should be retried, <code>false</code> otherwise
+     */
+    public static boolean isTransient(Throwable error) {
+        if (error instanceof CoiServiceException == false) {
+            return false;
+        }
+        // Quota errors and rejections of an overloaded transport are reported back to the COI server which is expected to slow down
+        CoiServiceException e = (CoiServiceException) error;
+        return CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(e) || CoiServiceExceptionCodes.UNEXPECTED_ERROR.equals(e);
+    }
+
+    /**
+     * Puts the push message into the {@link RetryJournal} in case the given error is transient
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @param error The error
+     * @return <code>true</code> if the push message is going to be retried, <code>false</code> otherwise
+     */
+    private boolean journal(PushResource resource, byte[] data, Throwable error) {
+        if (retryJournal.isEnabled() == false || isTransient(error) == false || retryJournal.append(resource.getId(), data) == false) {
+            return false;
+        }
+        LOG.debug("Failed to send push message for resource {}. The push message is going to be retried later on.", resource.getId());
+        return true;
+    }
+
+    /**
+     * Puts the push message into the dispatch queue. The message is sent by one of the dispatch workers later on.
+     *
+     * @param resource The {@link PushResource}
+     * @param data The message received from the COI server
+     * @throws CoiServiceException {@link CoiServiceExceptionCodes#DISPATCH_QUEUE_FULL} in case the dispatch queue is full or shut down
+     */
+    public void dispatch(PushResource resource, byte[] data) throws CoiServiceException {
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                waitTimer.record(start - enqueued, NANOSECONDS);
+                try {
+                    send(resource, data);
+                    successCounter.increment();
+                } catch (CoiServiceException e) {
+                    errorCounter.increment();
+                    e.log(LOG);
+                } catch (RuntimeException e) {
+                    errorCounter.increment();
+                    LOG.error("Unable to dispatch push message for resource {}", resource.getId(), e);
+                } finally {
+                    timer.record(System.nanoTime() - start, NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.create(Integer.valueOf(config.getRetryAfter()));
+        }
+    }
+
+    /**
+     * Stops accepting new push messages and waits for the dispatch queue to drain
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(config.getShutdownTimeout(), MILLISECONDS) == false) {
+                List<Runnable> dropped = executor.shutdownNow();
+                LOG.warn("Dispatch queue wasn't drained within {} ms. Dropped {} push messages.", config.getShutdownTimeout(), dropped.size());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
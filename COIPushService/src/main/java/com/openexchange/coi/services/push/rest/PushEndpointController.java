@@ -4,20 +4,29 @@ package com.openexchange.coi.services.push.rest;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
 import javax.validation.ConstraintViolationException;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -26,12 +35,19 @@ import com.openexchange.coi.services.Profiles;
 import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
 import com.openexchange.coi.services.exception.ResponseCodeAwareCoiServiceException;
+import com.openexchange.coi.services.push.PushConfiguration;
 import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.dispatch.PushCoalescer;
+import com.openexchange.coi.services.push.dispatch.PushDispatcher;
 import com.openexchange.coi.services.push.rest.VAPIDValidator.PublicKeySource;
+import com.openexchange.coi.services.push.rest.batch.PushBatchEntry;
+import com.openexchange.coi.services.push.rest.batch.PushBatchReader;
+import com.openexchange.coi.services.push.rest.batch.PushBatchResult;
+import com.openexchange.coi.services.push.rest.body.MulticastBody;
 import com.openexchange.coi.services.push.rest.util.SizeLimitInputStream;
-import com.openexchange.coi.services.push.rest.util.Utils;
 import com.openexchange.coi.services.push.storage.PushResource;
 import com.openexchange.coi.services.validator.IsUUID;
+import com.openexchange.coi.services.validator.UUIDValidator;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
@@ -64,6 +80,15 @@ public class PushEndpointController {
      */
     private static final int MAX_PAYLOAD_SIZE = 4000;
 
+    /**
+     * The RFC 8030 header used to replace pending push messages
+     */
+    private static final String TOPIC_HEADER = "Topic";
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private static final UUIDValidator UUID_VALIDATOR = new UUIDValidator();
+
     @Autowired
     private PushService pushService;
 
@@ -71,9 +96,16 @@ public class PushEndpointController {
     private VAPIDValidator vapidValidator;
 
     @Autowired
-    private Utils utils;
+    private PushDispatcher dispatcher;
+
+    @Autowired
+    private PushCoalescer coalescer;
+
+    @Autowired
+    private PushConfiguration pushConfiguration;
 
     private Timer timer;
+    private Timer batchTimer;
     private Counter successfullCounter;
     private Counter errorCounter;
 
@@ -83,6 +115,7 @@ public class PushEndpointController {
     public PushEndpointController(MeterRegistry registry) {
         super();
         timer = Timer.builder(METRIC_TIMER).tag(METRIC_TYPE, "timer").register(registry);
+        batchTimer = Timer.builder(METRIC_TIMER).tag(METRIC_TYPE, "batch").register(registry);
         successfullCounter = Counter.builder(METRIC_TIMER).tag(METRIC_TYPE, "count").tag(TYPE, "success").register(registry);
         errorCounter = Counter.builder(METRIC_TIMER).tag(METRIC_TYPE, "count").tag(TYPE, "error").register(registry);
     }
@@ -116,17 +149,17 @@ public class PushEndpointController {
      *
      * @param id The id of the push resource
      * @param requestEntity The request containing the data
+     * @return A {@link CompletableFuture} of the response which is completed once the push message is handed over to the transport
      * @throws CoiServiceException
      */
-    @ResponseStatus(HttpStatus.CREATED)
     @RequestMapping(method = RequestMethod.POST, path = "/send/{id}")
-    public void push(@PathVariable("id") @IsUUID String id, HttpServletRequest requestEntity) throws CoiServiceException {
+    public CompletableFuture<ResponseEntity<Object>> push(@PathVariable("id") @IsUUID String id, HttpServletRequest requestEntity) throws CoiServiceException {
         long start = System.currentTimeMillis();
         final PushResourceHolder res = new PushResourceHolder(id);
 
         // Validate vapid header
         Date t0 = new Date();
-        vapidValidator.validateRequest(requestEntity, new PublicKeySource() {
+        vapidValidator.validateRequest(requestEntity, id, new PublicKeySource() {
 
             @Override
             public byte[] getPublicKey() throws CoiServiceException {
@@ -145,15 +178,32 @@ public class PushEndpointController {
             }
 
             PushResource resource = res.getPushResource();
-            pushService.sendPushToDevice(resource, data);
-            if (resource.isValid() == false) {
-                utils.setExpiryDate(resource, true);
-                resource.setValid(true);
-                pushService.save(resource);
-                LOG.debug("Properly saved push resource");
-            }
-            timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
-            successfullCounter.increment();
+            if (coalescer.isEnabled()) {
+                String topic = requestEntity.getHeader(TOPIC_HEADER);
+                coalescer.checkTopic(topic);
+                if (coalescer.submit(resource, topic, data)) {
+                    return CompletableFuture.completedFuture(created(start));
+                }
+            }
+            if (dispatcher.isAsync()) {
+                // Release the request thread while the transport is in flight
+                return dispatcher.sendAsync(resource, data).handle((v, t) -> {
+                    if (t == null) {
+                        return created(start);
+                    }
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    if (cause instanceof CoiServiceException) {
+                        return handlePushExceptions((CoiServiceException) cause);
+                    }
+                    throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+                });
+            }
+            if (dispatcher.isQueued()) {
+                dispatcher.dispatch(resource, data);
+            } else {
+                dispatcher.send(resource, data);
+            }
+            return CompletableFuture.completedFuture(created(start));
         } catch (IOException e) {
             if (e.getCause() instanceof CoiServiceException) {
                 throw (CoiServiceException) e.getCause();
@@ -162,6 +212,208 @@ public class PushEndpointController {
         }
     }
 
+    /**
+     * The batch endpoint used by the COI server to deliver many push messages at once. See {@link PushBatchReader} for the format of the body.
+     * <p>
+     * Each push message is validated and dispatched on its own as soon as it is read, so that the push messages reach the transport while the
+     * remaining body is still being parsed.
+     * <p>
+     * Reading stops at the first malformed frame and at the first push message exceeding the maximum batch size. Both get an error result
+     * after the results of the preceding push messages. Push messages behind them are not sent and have no result.
+     *
+     * @param requestEntity The request containing the push batch
+     * @return A {@link CompletableFuture} of the response containing a {@link PushBatchResult} per push message in the order of the batch
+     * @throws CoiServiceException in case the body is malformed
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/send-batch")
+    public CompletableFuture<ResponseEntity<Object>> pushBatch(HttpServletRequest requestEntity) throws CoiServiceException {
+        long start = System.currentTimeMillis();
+        PushBatchReader reader;
+        try {
+            reader = new PushBatchReader(requestEntity.getInputStream(), MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD);
+        } catch (IOException e) {
+            throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+        }
+        List<CompletableFuture<PushBatchResult>> results = new ArrayList<>();
+        int maxBatchSize = pushConfiguration.getMaxBatchSize();
+        while (true) {
+            PushBatchEntry entry;
+            try {
+                entry = reader.next();
+            } catch (CoiServiceException e) {
+                if (results.isEmpty()) {
+                    throw e;
+                }
+                // Keep the results of the already dispatched push messages, so that they aren't sent again by the client
+                results.add(CompletableFuture.completedFuture(toResult(null, e)));
+                break;
+            }
+            if (entry == null) {
+                break;
+            }
+            if (results.size() >= maxBatchSize) {
+                // The remaining push messages aren't read at all
+                results.add(CompletableFuture.completedFuture(toResult(entry.getId(), CoiServiceExceptionCodes.BATCH_SIZE_EXCEEDED.create(Integer.valueOf(maxBatchSize)))));
+                break;
+            }
+            results.add(pushBatchEntry(entry));
+        }
+        if (results.isEmpty()) {
+            throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<PushBatchResult> body = new ArrayList<>(results.size());
+            for (CompletableFuture<PushBatchResult> result : results) {
+                body.add(result.join());
+            }
+            batchTimer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+            return ResponseEntity.ok(body);
+        });
+    }
+
+    /**
+     * The multicast endpoint used by the COI server to deliver the same push message to many push resources at once
+     * <p>
+     * All push resources are loaded at once and sent as multicast messages grouped by their transport. The VAPID header is validated once per
+     * distinct public key of the push resources.
+     *
+     * @param body The {@link MulticastBody}
+     * @param requestEntity The request
+     * @return A {@link CompletableFuture} of the response containing a {@link PushBatchResult} per push resource in the order of the given ids
+     * @throws CoiServiceException in case the request is invalid
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/multicast")
+    public CompletableFuture<ResponseEntity<Object>> multicast(@Valid @RequestBody MulticastBody body, HttpServletRequest requestEntity) throws CoiServiceException {
+        long start = System.currentTimeMillis();
+        if (body.getIds().size() > pushConfiguration.getMaxBatchSize()) {
+            throw CoiServiceExceptionCodes.BATCH_SIZE_EXCEEDED.create(Integer.valueOf(pushConfiguration.getMaxBatchSize()));
+        }
+        if (body.getPayload().length == 0) {
+            throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+        }
+        if (body.getPayload().length > MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD) {
+            throw CoiServiceExceptionCodes.MAX_PUSH_SIZE_EXCEEDED.create(Integer.valueOf(MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD));
+        }
+        Map<String, PushBatchResult> results = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>(body.getIds().size());
+        for (String id : body.getIds()) {
+            if (UUID_VALIDATOR.isValid(id, null) == false) {
+                results.put(id, toResult(id, CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create()));
+            } else if (results.containsKey(id) == false) {
+                results.put(id, null);
+                ids.add(id);
+            }
+        }
+
+        // Validate the vapid header once per public key
+        String authorization = requestEntity.getHeader(HttpHeaders.AUTHORIZATION);
+        Map<String, List<PushResource>> byKey = new HashMap<>();
+        for (PushResource resource : pushService.findByIds(ids)) {
+            byKey.computeIfAbsent(Base64.getEncoder().encodeToString(resource.getPublicKey()), k -> new ArrayList<>()).add(resource);
+        }
+        List<PushResource> resources = new ArrayList<>(ids.size());
+        for (List<PushResource> group : byKey.values()) {
+            try {
+                // The JWT is verified once per group, so it is remembered for the first push resource of the group only
+                PushResource first = group.get(0);
+                vapidValidator.validate(authorization, first.getId(), () -> first.getPublicKey());
+                resources.addAll(group);
+            } catch (CoiServiceException e) {
+                group.forEach(r -> results.put(r.getId(), toResult(r.getId(), e)));
+            }
+        }
+        return dispatcher.multicastAsync(resources, body.getPayload()).thenApply(errors -> {
+            for (PushResource resource : resources) {
+                CoiServiceException e = errors.get(resource.getId());
+                results.put(resource.getId(), e == null ? batchCreated(resource.getId()) : toResult(resource.getId(), e));
+            }
+            List<PushBatchResult> response = new ArrayList<>(results.size());
+            results.forEach((id, result) -> response.add(result != null ? result : toResult(id, CoiServiceExceptionCodes.MISSING_PUSH_RESOURCE.create(id))));
+            batchTimer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    /**
+     * Validates and dispatches a single push message of a push batch
+     *
+     * @param entry The {@link PushBatchEntry}
+     * @return A {@link CompletableFuture} of the {@link PushBatchResult}
+     */
+    private CompletableFuture<PushBatchResult> pushBatchEntry(PushBatchEntry entry) {
+        String id = entry.getId();
+        try {
+            if (UUID_VALIDATOR.isValid(id, null) == false) {
+                // The push id is not a valid id
+                throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+            }
+            PushResourceHolder res = new PushResourceHolder(id);
+            vapidValidator.validate(entry.getAuthorization(), id, () -> res.getPushResource().getPublicKey());
+            if (entry.getPayload() == null) {
+                throw CoiServiceExceptionCodes.MAX_PUSH_SIZE_EXCEEDED.create(Integer.valueOf(MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD));
+            }
+            if (entry.getPayload().length == 0) {
+                throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+            }
+            PushResource resource = res.getPushResource();
+            if (dispatcher.isQueued()) {
+                dispatcher.dispatch(resource, entry.getPayload());
+                return CompletableFuture.completedFuture(batchCreated(id));
+            }
+            // Push messages of a batch are always sent concurrently so that they can be batched by the transport
+            return dispatcher.sendAsync(resource, entry.getPayload()).handle((v, t) -> {
+                if (t == null) {
+                    return batchCreated(id);
+                }
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                if (cause instanceof CoiServiceException) {
+                    return toResult(id, (CoiServiceException) cause);
+                }
+                LOG.error("Unable to send push message for resource {}", id, cause);
+                return toResult(id, CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(cause.getMessage()));
+            });
+        } catch (CoiServiceException e) {
+            return CompletableFuture.completedFuture(toResult(id, e));
+        }
+    }
+
+    /**
+     * Records the metrics of a successful push message of a push batch and creates the result
+     *
+     * @param id The id of the push resource
+     * @return The {@link PushBatchResult}
+     */
+    private PushBatchResult batchCreated(String id) {
+        successfullCounter.increment();
+        return new PushBatchResult(id, HttpStatus.CREATED.value(), null, null);
+    }
+
+    /**
+     * Creates the result of a failed push message of a push batch
+     *
+     * @param id The id of the push resource
+     * @param e The {@link CoiServiceException}
+     * @return The {@link PushBatchResult}
+     */
+    private PushBatchResult toResult(String id, CoiServiceException e) {
+        errorCounter.increment();
+        e.log(LOG);
+        ResponseEntity<Object> response = toResponse(e);
+        return new PushBatchResult(id, response.getStatusCodeValue(), e.getMessage(), response.getHeaders().getFirst(RETRY_AFTER));
+    }
+
+    /**
+     * Records the metrics of a successful push request and creates the response
+     *
+     * @param start The start time of the request
+     * @return The {@link ResponseEntity}
+     */
+    private ResponseEntity<Object> created(long start) {
+        timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+        successfullCounter.increment();
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
     /**
      * An {@link ExceptionHandler} for {@link PushException}
      *
@@ -172,11 +424,27 @@ public class PushEndpointController {
     public ResponseEntity<Object> handlePushExceptions(CoiServiceException e) {
         errorCounter.increment();
         e.log(LOG);
+        return toResponse(e);
+    }
+
+    /**
+     * Maps the given {@link CoiServiceException} to a response
+     *
+     * @param e The {@link CoiServiceException}
+     * @return The {@link ResponseEntity}
+     */
+    private ResponseEntity<Object> toResponse(CoiServiceException e) {
         if (CoiServiceExceptionCodes.INVALID_TRANSPORT.equals(e)) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("The transport of this subscription is not supported anymore");
         }
         if (CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(e)) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", e.getArgs().get(0).toString()).build();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(RETRY_AFTER, e.getArgs().get(0).toString()).build();
+        }
+        if (CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.equals(e) || CoiServiceExceptionCodes.VERIFICATION_QUEUE_FULL.equals(e)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(RETRY_AFTER, e.getArgs().get(0).toString()).build();
+        }
+        if (CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(e) || CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.equals(e)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(RETRY_AFTER, e.getArgs().get(1).toString()).build();
         }
         if (e instanceof ResponseCodeAwareCoiServiceException) {
             return ResponseEntity.status(((ResponseCodeAwareCoiServiceException) e).getStatus()).body(e.getMessage());
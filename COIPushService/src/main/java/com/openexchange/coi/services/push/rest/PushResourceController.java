@@ -38,6 +38,7 @@ import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
 import com.openexchange.coi.services.exception.ResponseCodeAwareCoiServiceException;
 import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.crypto.keys.parsing.KeyConverter;
 import com.openexchange.coi.services.push.crypto.keys.parsing.PublicKeyParser;
 import com.openexchange.coi.services.push.rest.body.PushResourceBody;
 import com.openexchange.coi.services.push.rest.body.UpdateBody;
@@ -118,7 +119,12 @@ public class PushResourceController {
      */
     private byte[] getPublicKey(PushResourceBody body) throws CoiServiceException {
         PublicKey key = new PublicKeyParser().parse(body.getPublicKey());
-        return key.getEncoded();
+        // Only the X.962 point of the P-256 key is stored
+        byte[] point = KeyConverter.DERToX962(key.getEncoded());
+        if (point.length != KeyConverter.X962_LENGTH) {
+            throw CoiServiceExceptionCodes.INVALID_PUBLIC_KEY.create();
+        }
+        return point;
     }
 
     /**
@@ -210,7 +216,8 @@ public class PushResourceController {
             timers.get(REQ_UPDATE).record(Duration.ofMillis(currentTimeMillis() - start));
             return new PushResourceResponse(res, createEntpoint(id));
         }
-        PushResource result = pushSevice.update(old, res);
+        // Only extending the expiry doesn't need to be written immediately
+        PushResource result = update == null ? pushSevice.touch(old, res) : pushSevice.update(old, res);
         successCounter.get(REQ_UPDATE).increment();
         timers.get(REQ_UPDATE).record(Duration.ofMillis(currentTimeMillis() - start));
         return new PushResourceResponse(result, createEntpoint(id));
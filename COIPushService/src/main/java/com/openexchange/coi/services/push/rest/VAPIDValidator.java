@@ -2,13 +2,10 @@
 package com.openexchange.coi.services.push.rest;
 
 import java.net.URL;
-import java.security.PublicKey;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Date;
 import java.util.Objects;
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.eclipse.jetty.http.HttpHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,9 +17,11 @@ import com.openexchange.coi.services.Profiles;
 import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
 import com.openexchange.coi.services.push.PushConfiguration;
-import com.openexchange.coi.services.push.crypto.jwt.JWTHandler;
+import com.openexchange.coi.services.push.crypto.CryptoWorkerPool;
+import com.openexchange.coi.services.push.crypto.jwt.ES256JWTVerifier;
 import com.openexchange.coi.services.push.crypto.jwt.JWTValidationResult;
-import com.openexchange.coi.services.push.crypto.keys.parsing.PublicKeyParser;
+import com.openexchange.coi.services.push.crypto.keys.parsing.ParsedPublicKey;
+import com.openexchange.coi.services.push.rest.cache.PublicKeyCache;
 import com.openexchange.coi.services.push.rest.cache.VapidCache;
 import com.openexchange.coi.services.push.rest.header.VAPIDHeader;
 
@@ -39,12 +38,17 @@ public class VAPIDValidator {
     @Autowired
     private VapidCache vapidCache;
 
-    private static Logger LOG = LoggerFactory.getLogger(VAPIDValidator.class);
+    @Autowired
+    private PublicKeyCache publicKeyCache;
 
-    private static final String ALGORITHM_ES256 = "ES256";
+    @Autowired
+    private CryptoWorkerPool cryptoPool;
+
+    private static Logger LOG = LoggerFactory.getLogger(VAPIDValidator.class);
 
     private final PushConfiguration config;
     private final EndpointService endpointService;
+    private ES256JWTVerifier jwtVerifier;
 
     /**
      * {@link PublicKeySource} - Defines a source for the public key material used for validating VAPID headers
@@ -75,17 +79,41 @@ public class VAPIDValidator {
         this.endpointService = Objects.requireNonNull(endpointService, "endpointService must not be null");
     }
 
+    /**
+     * Creates the {@link ES256JWTVerifier} for the audience of this service
+     */
+    @PostConstruct
+    public void init() {
+        //The AUD claim is required as described in the VAPID RFC 8292
+        final URL endpoint = endpointService.getEndpoint();
+        jwtVerifier = new ES256JWTVerifier(endpoint.getProtocol() + "://" + endpoint.getHost());
+    }
+
     /**
      * Validates the VAPID header of the a given {@link HttpServletRequest} against
      * a registered public key.
      * 
      * @param request The request to validate for VAPID
+     * @param resourceId The id of the push resource the request is for
      * @return The key parsed from the vapid header or null, if the vapid validation is disabled
      * @throws CoiServiceException if the VAPID header and the contained signature could not be verified.
      */
-    public void validateRequest(HttpServletRequest request, PublicKeySource keySource) throws CoiServiceException {
+    public void validateRequest(HttpServletRequest request, String resourceId, PublicKeySource keySource) throws CoiServiceException {
+        if (config.isVapid()) {
+            validate(request.getHeader(HttpHeader.AUTHORIZATION.toString()), resourceId, keySource);
+        }
+    }
+
+    /**
+     * Validates the value of a VAPID authorization header against a registered public key.
+     * 
+     * @param authorizationHeader The value of the VAPID authorization header or <code>null</code>
+     * @param resourceId The id of the push resource the header is for
+     * @param keySource The {@link PublicKeySource} of the push resource
+     * @throws CoiServiceException if the VAPID header and the contained signature could not be verified.
+     */
+    public void validate(String authorizationHeader, String resourceId, PublicKeySource keySource) throws CoiServiceException {
         if (config.isVapid()) {
-            final String authorizationHeader = request.getHeader(HttpHeader.AUTHORIZATION.toString());
             if (authorizationHeader == null) {
                 throw CoiServiceExceptionCodes.MISSING_VAPID_HEADER.create();
             }
@@ -97,49 +125,49 @@ public class VAPIDValidator {
                 throw CoiServiceExceptionCodes.MISSING_VAPID_JWT_TOKEN.create();
             }
 
-            String hash = DigestUtils.md5Hex(jwt).toUpperCase();
-
-            String vapid = vapidCache.getVapid(hash);
-            if (vapid != null) {
-                LOG.debug("Vapid cache hit");
-                return;
-            } else {
-                LOG.debug("Vapid cache miss");
-            }
+            // Concurrent requests with the same JWT for the same push resource wait for a single verification
+            vapidCache.verify(resourceId, jwt, () -> verify(vapidHeader, jwt, keySource));
+        }
+    }
 
-            //Get the provided public key from the request header
-            String headerKey = vapidHeader.getKey();
-            if (headerKey == null) {
-                throw CoiServiceExceptionCodes.MISSING_VAPID_KEY.create();
-            }
+    /**
+     * Verifies the JWT of a VAPID header against a registered public key
+     *
+     * @param vapidHeader The {@link VAPIDHeader}
+     * @param jwt The JWT of the header
+     * @param keySource The {@link PublicKeySource} of the push resource
+     * @return The expiration time of the JWT
+     * @throws CoiServiceException if the VAPID header and the contained signature could not be verified.
+     */
+    private Date verify(VAPIDHeader vapidHeader, String jwt, PublicKeySource keySource) throws CoiServiceException {
+        //Get the provided public key from the request header
+        String headerKey = vapidHeader.getKey();
+        if (headerKey == null) {
+            throw CoiServiceExceptionCodes.MISSING_VAPID_KEY.create();
+        }
 
-            //parse provided key
-            PublicKey requestPublicKey = new PublicKeyParser().parse(headerKey);
-
-            //The AUD claim is required as described in the VAPID RFC 8292  
-            Map<String, Object> expectedClaims = new HashMap<String, Object>();
-            final URL endpoint = endpointService.getEndpoint();
-            expectedClaims.put(JWTHandler.AUD_CLAIM, Arrays.asList(endpoint.getProtocol() + "://" + endpoint.getHost()));
-            //Validate the JWT with the header's key
-            final JWTValidationResult validationResult = new JWTHandler(ALGORITHM_ES256).validateJWT(jwt, requestPublicKey, expectedClaims);
-            if (validationResult.isFailure()) {
-                throw CoiServiceExceptionCodes.VAPID_SIGNATURE_NOT_VALID.create(validationResult.getMessage());
-            }
+        //parse provided key
+        ParsedPublicKey requestPublicKey = publicKeyCache.getPublicKey(headerKey);
 
-            // Get the key to check against from the key source only after verifying the signature with the request's public key
-            //This allows a caller to defer key lookup until we are sure the VAPID information are at least consistent.
-            final byte[] publicKeyMaterial = keySource.getPublicKey();
-            if (publicKeyMaterial == null) {
-                LOG.error("The key provided by the given keySource must not be null");
-                throw CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create();
-            }
-            //Check if the the keys are the same; i.e the signature is also valid for the _stored_ key!
-            if (!Arrays.equals(requestPublicKey.getEncoded(), publicKeyMaterial)) {
-                LOG.error("The key provided by the given keySource does not match the one in the request.");
-                throw CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create();
-            }
+        //Validate the JWT with the header's key, on the crypto worker pool if enabled
+        final JWTValidationResult validationResult = cryptoPool.execute(() -> jwtVerifier.verify(jwt, requestPublicKey.getKey()));
+        if (validationResult.isFailure()) {
+            throw CoiServiceExceptionCodes.VAPID_SIGNATURE_NOT_VALID.create(validationResult.getMessage());
+        }
 
-            vapidCache.putInCache(hash, jwt);
+        // Get the key to check against from the key source only after verifying the signature with the request's public key
+        //This allows a caller to defer key lookup until we are sure the VAPID information are at least consistent.
+        final byte[] publicKeyMaterial = keySource.getPublicKey();
+        if (publicKeyMaterial == null) {
+            LOG.error("The key provided by the given keySource must not be null");
+            throw CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create();
         }
+        //Check if the the keys are the same; i.e the signature is also valid for the _stored_ key!
+        if (!requestPublicKey.matches(publicKeyMaterial)) {
+            LOG.error("The key provided by the given keySource does not match the one in the request.");
+            throw CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create();
+        }
+
+        return validationResult.getExpirationTime();
     }
 }
@@ -0,0 +1,150 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.rest.batch;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+
+/**
+ * {@link PushBatchReader} reads the entries of a push batch one after another from a stream without buffering the whole batch.
+ * <p>
+ * A push batch is a sequence of frames with the following big-endian layout:
+ *
+ * <pre>
+ * unsigned short length of the push resource id
+ * byte[]         push resource id (UTF-8)
+ * unsigned short length of the VAPID authorization header value, 0 if absent
+ * byte[]         VAPID authorization header value (UTF-8)
+ * int            length of the push message
+ * byte[]         push message
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushBatchReader {
+
+    private final DataInputStream in;
+    private final int maxPayloadSize;
+
+    /**
+     * Initializes a new {@link PushBatchReader}.
+     *
+     * @param in The {@link InputStream} of the request body
+     * @param maxPayloadSize The maximum size of a push message in bytes. Larger push messages are skipped.
+     */
+    public PushBatchReader(InputStream in, int maxPayloadSize) {
+        super();
+        this.in = new DataInputStream(in);
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * Reads the next entry
+     *
+     * @return The next {@link PushBatchEntry} or <code>null</code> if the end of the batch is reached
+     * @throws CoiServiceException {@link CoiServiceExceptionCodes#INVALID_REQUEST_BODY} in case the frame is malformed
+     */
+    public PushBatchEntry next() throws CoiServiceException {
+        try {
+            int first = in.read();
+            if (first < 0) {
+                return null;
+            }
+            int idLength = (first << 8) | in.readUnsignedByte();
+            if (idLength == 0) {
+                throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+            }
+            String id = readString(idLength);
+            int authLength = in.readUnsignedShort();
+            String authorization = authLength == 0 ? null : readString(authLength);
+            int payloadLength = in.readInt();
+            if (payloadLength < 0) {
+                throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+            }
+            if (payloadLength > maxPayloadSize) {
+                skip(payloadLength);
+                return new PushBatchEntry(id, authorization, null, payloadLength);
+            }
+            byte[] payload = new byte[payloadLength];
+            in.readFully(payload);
+            return new PushBatchEntry(id, authorization, payload, payloadLength);
+        } catch (IOException e) {
+            // Truncated frame
+            throw CoiServiceExceptionCodes.INVALID_REQUEST_BODY.create();
+        }
+    }
+
+    private String readString(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void skip(int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+}
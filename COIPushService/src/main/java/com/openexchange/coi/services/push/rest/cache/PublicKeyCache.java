@@ -0,0 +1,165 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.rest.cache;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.stereotype.Service;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.push.crypto.keys.parsing.ParsedPublicKey;
+import com.openexchange.coi.services.push.crypto.keys.parsing.PublicKeyParser;
+import com.openexchange.coi.services.util.caching.CacheConfig;
+import com.openexchange.coi.services.util.caching.CacheProvider;
+import com.openexchange.coi.services.util.caching.CaffeineCaches;
+import com.openexchange.coi.services.util.caching.DeactivatableCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link PublicKeyCache} caches the {@link PublicKey}s parsed from the key material of VAPID headers, so that repeated senders don't need to
+ * parse their key again.
+ * <p>
+ * Only successfully parsed keys are cached.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.push.vapid.keys.cache")
+public class PublicKeyCache implements CacheProvider, CacheConfig {
+
+    private static final String CACHE_NAME = "vapid.keys";
+
+    /** Whether parsed public keys are cached or not */
+    @Getter
+    @Setter
+    private boolean enabled = true;
+
+    /** The maximum number of cached public keys */
+    @Getter
+    @Setter
+    private long max = 10000;
+
+    /** The time in hours after which an unused public key is removed from the cache */
+    @Getter
+    @Setter
+    private long expire = 24;
+
+    private final MeterRegistry registry;
+    private final PublicKeyParser parser = new PublicKeyParser();
+
+    private Cache<String, ParsedPublicKey> cache;
+
+    /**
+     * Initializes a new {@link PublicKeyCache}.
+     *
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PublicKeyCache(MeterRegistry registry) {
+        super();
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (cache != null) {
+            // The configuration has been re-bound, keep the cached keys
+            CaffeineCaches.setMaximumSize(cache, max);
+            CaffeineCaches.setExpireAfterAccess(cache, expire, TimeUnit.HOURS);
+            return;
+        }
+        cache = Caffeine.newBuilder().maximumSize(max).expireAfterAccess(expire, TimeUnit.HOURS).recordStats().build();
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Gets the {@link ParsedPublicKey} for the given key material, parsing it only if it isn't cached yet
+     *
+     * @param keyMaterial The key material as present in the VAPID header
+     * @return The {@link ParsedPublicKey}
+     * @throws CoiServiceException In case the key material can't be parsed
+     */
+    public ParsedPublicKey getPublicKey(String keyMaterial) throws CoiServiceException {
+        if (enabled == false) {
+            return new ParsedPublicKey(parser.parse(keyMaterial));
+        }
+        ParsedPublicKey result = cache.getIfPresent(keyMaterial);
+        if (result == null) {
+            result = new ParsedPublicKey(parser.parse(keyMaterial));
+            cache.put(keyMaterial, result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CacheManager getCacheManager() {
+        SimpleCacheManager result = new SimpleCacheManager();
+        CaffeineCache caffeineCache = new CaffeineCache(CACHE_NAME, (Cache) cache, false);
+        result.setCaches(Collections.singleton(new DeactivatableCache(this, caffeineCache)));
+        result.afterPropertiesSet();
+        return result;
+    }
+
+}
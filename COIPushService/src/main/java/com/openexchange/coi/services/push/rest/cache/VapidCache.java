@@ -49,26 +49,47 @@
 
 package com.openexchange.coi.services.push.rest.cache;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Service;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.util.caching.CacheConfig;
 import com.openexchange.coi.services.util.caching.CacheProvider;
+import com.openexchange.coi.services.util.caching.CaffeineCaches;
 import com.openexchange.coi.services.util.caching.DeactivatableCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.Getter;
 import lombok.Setter;
 
 /**
- * {@link VapidCache}
+ * {@link VapidCache} remembers the VAPID JWTs which have been verified for a push resource.
+ * <p>
+ * Entries are keyed by the id of the push resource and a SHA-256 digest of the JWT, so that a JWT verified for one push resource isn't accepted
+ * for another one. Each entry expires at the <code>exp</code> claim of its JWT.
+ * <p>
+ * Concurrent verifications of the same JWT for the same push resource are performed only once, the other callers wait for the result.
  *
  * @author <a href="mailto:kevin.ruthmann@open-xchange.com">Kevin Ruthmann</a>
  * @since v1.0.0
@@ -78,6 +99,19 @@ import lombok.Setter;
 @ConfigurationProperties(prefix = "com.openexchange.coi.services.push.vapid.cache")
 public class VapidCache implements CacheProvider, CacheConfig {
 
+    private static final Logger LOG = LoggerFactory.getLogger(VapidCache.class);
+
+    private static final String CACHE_KEY = "vapids";
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.vapid";
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     @Getter
     @Setter
     private boolean enabled = true;
@@ -86,26 +120,196 @@ public class VapidCache implements CacheProvider, CacheConfig {
     @Setter
     private long max = 10000;
 
-    private static final String CACHE_KEY = "vapids";
+    private final MeterRegistry registry;
+    private final Map<Key, CompletableFuture<Date>> inFlight = new ConcurrentHashMap<>();
+    private final Counter suppressedCounter;
+
+    private Cache<Key, Long> cache;
+
+    /**
+     * Initializes a new {@link VapidCache}.
+     *
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public VapidCache(MeterRegistry registry) {
+        super();
+        this.registry = registry;
+        this.suppressedCounter = Counter.builder(METRIC_NAME).tag("mtype", "count").tag("type", "suppressed").register(registry);
+    }
+
+    /**
+     * Initializes the cache
+     */
+    @PostConstruct
+    public void init() {
+        if (cache != null) {
+            // The configuration has been re-bound, keep the verified JWTs
+            CaffeineCaches.setMaximumSize(cache, max);
+            return;
+        }
+        cache = Caffeine.newBuilder().maximumSize(max).expireAfter(new ExpiresAt()).recordStats().build();
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_KEY);
+    }
+
+    /**
+     * {@link Verification} verifies a JWT
+     */
+    @FunctionalInterface
+    public interface Verification {
+
+        /**
+         * Verifies the JWT
+         *
+         * @return The value of the <code>exp</code> claim of the JWT
+         * @throws CoiServiceException if the JWT could not be verified
+         */
+        Date verify() throws CoiServiceException;
+    }
+
+    /**
+     * Verifies the given JWT for the given push resource unless it has already been verified.
+     * <p>
+     * In case the same JWT is already being verified for the same push resource, the result of that verification is awaited instead.
+     *
+     * @param resourceId The id of the push resource
+     * @param jwt The JWT
+     * @param verification The {@link Verification} to perform on a cache miss
+     * @throws CoiServiceException if the JWT could not be verified
+     */
+    public void verify(String resourceId, String jwt, Verification verification) throws CoiServiceException {
+        if (enabled == false) {
+            verification.verify();
+            return;
+        }
+        Key key = new Key(resourceId, jwt);
+        if (cache.getIfPresent(key) != null) {
+            LOG.debug("Vapid cache hit");
+            return;
+        }
+        LOG.debug("Vapid cache miss");
+        CompletableFuture<Date> future = new CompletableFuture<>();
+        CompletableFuture<Date> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            suppressedCounter.increment();
+            await(running);
+            return;
+        }
+        try {
+            Date expirationTime = verification.verify();
+            put(key, expirationTime);
+            future.complete(expirationTime);
+        } catch (CoiServiceException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Only removed after the result is cached, so that subsequent callers either wait or hit the cache
+            inFlight.remove(key, future);
+        }
+    }
 
-    @Cacheable(value = CACHE_KEY, unless = "#result == null")
-    public String getVapid(String hash) {
-        return null;
+    /**
+     * Waits for the result of a running verification
+     *
+     * @param running The running verification
+     * @throws CoiServiceException if the JWT could not be verified
+     */
+    private static void await(CompletableFuture<Date> running) throws CoiServiceException {
+        try {
+            running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CoiServiceException) {
+                throw (CoiServiceException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
-    @CachePut(value = CACHE_KEY, key = "#hash")
-    public String putInCache(String hash, String jwt) {
-        return jwt;
+    private void put(Key key, Date expirationTime) {
+        if (expirationTime != null && expirationTime.getTime() > System.currentTimeMillis()) {
+            cache.put(key, Long.valueOf(expirationTime.getTime()));
+        }
     }
 
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     public CacheManager getCacheManager() {
         SimpleCacheManager result = new SimpleCacheManager();
-        Cache<Object, Object> cache = Caffeine.newBuilder().maximumSize(max).expireAfterWrite(24, TimeUnit.HOURS).build();
-        CaffeineCache caffeineCache = new CaffeineCache(CACHE_KEY, cache, false);
+        CaffeineCache caffeineCache = new CaffeineCache(CACHE_KEY, (Cache) cache, false);
         result.setCaches(Collections.singleton(new DeactivatableCache(this, caffeineCache)));
         result.afterPropertiesSet();
         return result;
     }
 
+    /**
+     * {@link ExpiresAt} expires an entry at the expiration time it holds
+     */
+    private static class ExpiresAt implements Expiry<Key, Long> {
+
+        private static long remaining(Long expirationTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expirationTime.longValue() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterCreate(Key key, Long value, long currentTime) {
+            return remaining(value);
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, Long value, long currentTime, long currentDuration) {
+            return remaining(value);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, Long value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * {@link Key} - The id of the push resource and the first 128 bits of the SHA-256 digest of the JWT
+     */
+    private static class Key {
+
+        private final String resourceId;
+        private final long high;
+        private final long low;
+
+        Key(String resourceId, String jwt) {
+            MessageDigest digest = SHA256.get();
+            byte[] hash = digest.digest(jwt.getBytes(StandardCharsets.US_ASCII));
+            this.resourceId = resourceId;
+            this.high = toLong(hash, 0);
+            this.low = toLong(hash, 8);
+        }
+
+        private static long toLong(byte[] bytes, int offset) {
+            long result = 0;
+            for (int i = offset; i < offset + 8; i++) {
+                result = (result << 8) | (bytes[i] & 0xFF);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * resourceId.hashCode() + Long.hashCode(high ^ low);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof Key == false) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return high == other.high && low == other.low && resourceId.equals(other.resourceId);
+        }
+    }
+
 }
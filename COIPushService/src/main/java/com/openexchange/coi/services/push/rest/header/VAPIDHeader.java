@@ -1,27 +1,28 @@
 package com.openexchange.coi.services.push.rest.header;
 
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * {@link VAPIDHeader} extracts VAPID information from a HTTP Authentication Header
+ * <p>
+ * The header is parsed once in a single scan. Fields are separated by commas; the JWT is taken from the first field containing <code>t=</code>
+ * and the public key from the first field containing <code>k=</code>. Line breaks within the JWT are ignored. If the header consists of a single
+ * field without a <code>t=</code>, the value after the last whitespace is taken as the JWT as long as the header starts with
+ * <code>Authorization:</code> followed by a whitespace before it.
  *
  * @author <a href="mailto:benjamin.gruedelbach@open-xchange.com">Benjamin Gruedelbach</a>
  * @since v1.0.0
  */
 public class VAPIDHeader {
 
-	private static String FIELD_SEPARATOR = ","; 
-	
+	private static final char FIELD_SEPARATOR = ',';
+
+	//Fallback if a client only specifies the encoded JWT token in the auth-header
+	private static final String FALLBACK_PREFIX = "Authorization:";
+
 	private final String header;
-	
-	//Regex for checking RFC 8292 compliant VAPID headers
-	private final Pattern jwtTokenPattern = Pattern.compile("t=(.*)",Pattern.DOTALL);
-	private final Pattern jwtKeyPattern = Pattern.compile("k=(.*)",Pattern.DOTALL);
-	
-	//Fallback Regex if a client only specifies the encoded JWT token in the auth-header
-	private final Pattern fallbackPattern = Pattern.compile("Authorization:\\s.*\\s(.*)", Pattern.DOTALL);
+	private String jwt;
+	private String key;
 
 	/**
 	 * Initializes a new {@link VAPIDHeader} from a HTTP authentication Header
@@ -30,64 +31,171 @@ public class VAPIDHeader {
 	 */
 	public VAPIDHeader(String authenticationHeader) {
 		this.header = Objects.requireNonNull(authenticationHeader);
+		parse();
 	}
-	
+
 	/**
-	 * Internal method to validate a parsed JWT
+	 * Scans the header for the JWT and the public key
+	 */
+	private void parse() {
+		int length = header.length();
+		// Trailing empty fields are ignored
+		int end = length;
+		while (end > 0 && header.charAt(end - 1) == FIELD_SEPARATOR) {
+			end--;
+		}
+		boolean jwtFound = false;
+		boolean keyFound = false;
+		int fields = 0;
+		int fieldStart = 0;
+		while (fieldStart < end) {
+			int fieldEnd = header.indexOf(FIELD_SEPARATOR, fieldStart);
+			if (fieldEnd < 0 || fieldEnd > end) {
+				fieldEnd = end;
+			}
+			fields++;
+			for (int i = fieldStart; i < fieldEnd && (jwtFound == false || keyFound == false); i++) {
+				char c = header.charAt(i);
+				if (jwtFound == false && c == 't') {
+					//Search the JWT "t=.."
+					int next = skipLineBreaks(i + 1, fieldEnd);
+					if (next < fieldEnd && header.charAt(next) == '=') {
+						jwt = validate(next + 1, fieldEnd);
+						jwtFound = true;
+					}
+				} else if (keyFound == false && c == 'k' && i + 1 < fieldEnd && header.charAt(i + 1) == '=') {
+					//Search the key "k=.."
+					key = header.substring(i + 2, fieldEnd);
+					keyFound = true;
+				}
+			}
+			fieldStart = fieldEnd + 1;
+		}
+		if (jwtFound == false && fields == 1) {
+			//As a fallback we assume that the last part of the header value represents the JWT
+			jwt = fallback(end);
+		}
+	}
+
+	/**
+	 * Skips line breaks
 	 * 
-	 * @param jwt The JWT
-	 * @return The jwt if its valid, or null if not
+	 * @param from The index to start from
+	 * @param to The end index
+	 * @return The index of the first character which is no line break or <code>to</code>
 	 */
-	private String validate(String jwt) {
-		int dotCount = jwt.length() - jwt.replace(".", "").length();
-		return dotCount == 2 ? jwt : null;
+	private int skipLineBreaks(int from, int to) {
+		int i = from;
+		while (i < to && header.charAt(i) == '\n') {
+			i++;
+		}
+		return i;
 	}
 
 	/**
-	 * Gets the JSON web token (JWT)
+	 * Gets the JWT of a header which consists of <code>Authorization:</code>, a whitespace and the JWT after the last whitespace
 	 * 
-	 * @return The JWT, or null if no JWT was found in the authentication header.
+	 * @param end The end of the field
+	 * @return The JWT or <code>null</code>
 	 */
-	public String getJWT() {
-		
-		final String[] fields = header.split(FIELD_SEPARATOR);
-		for(String field : fields) {
-			field = field.replace("\n", "");
-			
-			//Search the JWT "t=.."
-			Matcher matcher = jwtTokenPattern.matcher(field);
-			if(matcher.find()) {
-				String jwt = matcher.group(1);
-				return validate(jwt);
-			}
-			
-			//As a fallback we assume that the whole header value represents the JWT
-			if(fields.length == 1) {
-				Matcher fallbackMather = fallbackPattern.matcher(field);
-				if(fallbackMather.find()) {
-					String jwt = fallbackMather.group(1);
-					return validate(jwt);
+	private String fallback(int end) {
+		int lastWhitespace = end - 1;
+		while (lastWhitespace >= 0 && isWhitespace(header.charAt(lastWhitespace)) == false) {
+			lastWhitespace--;
+		}
+		if (lastWhitespace < 0) {
+			return null;
+		}
+		// The prefix must be followed by a whitespace other than the last one
+		for (int i = 0; i < lastWhitespace; i++) {
+			if (header.charAt(i) == 'A') {
+				int next = matchPrefix(i, lastWhitespace);
+				if (next >= 0 && next < lastWhitespace && isWhitespace(header.charAt(next))) {
+					return validate(lastWhitespace + 1, end);
 				}
 			}
 		}
-
 		return null;
 	}
-	
+
+	/**
+	 * Matches the fallback prefix ignoring line breaks
+	 * 
+	 * @param from The index to start at
+	 * @param to The end index
+	 * @return The index of the first character after the prefix which is no line break or <code>-1</code> if the prefix doesn't match
+	 */
+	private int matchPrefix(int from, int to) {
+		int i = from;
+		for (int j = 0; j < FALLBACK_PREFIX.length(); j++) {
+			i = skipLineBreaks(i, to);
+			if (i >= to || header.charAt(i) != FALLBACK_PREFIX.charAt(j)) {
+				return -1;
+			}
+			i++;
+		}
+		return skipLineBreaks(i, to);
+	}
+
+	/**
+	 * Whether the character is a whitespace other than a line break
+	 * 
+	 * @param c The character
+	 * @return <code>true</code> if the character is a whitespace, <code>false</code> otherwise
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	/**
+	 * Internal method to validate a parsed JWT
+	 * 
+	 * @param from The start index of the JWT
+	 * @param to The end index of the JWT
+	 * @return The jwt without line breaks if its valid, or null if not
+	 */
+	private String validate(int from, int to) {
+		int dotCount = 0;
+		boolean lineBreaks = false;
+		for (int i = from; i < to; i++) {
+			char c = header.charAt(i);
+			if (c == '.') {
+				dotCount++;
+			} else if (c == '\n') {
+				lineBreaks = true;
+			}
+		}
+		if (dotCount != 2) {
+			return null;
+		}
+		if (lineBreaks == false) {
+			return header.substring(from, to);
+		}
+		StringBuilder result = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			char c = header.charAt(i);
+			if (c != '\n') {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Gets the JSON web token (JWT)
+	 * 
+	 * @return The JWT, or null if no JWT was found in the authentication header.
+	 */
+	public String getJWT() {
+		return jwt;
+	}
+
 	/**
 	 * Gets the public key provided in the VAPID header
 	 * 
 	 * @return The public key
 	 */
 	public String getKey() {
-		final String[] fields = header.split(FIELD_SEPARATOR);
-		for(String field : fields) {
-			//Search the JWT "t=.."
-			Matcher matcher = jwtKeyPattern.matcher(field);
-			if(matcher.find()) {
-				return matcher.group(1);
-			}
-		}
-		return null;
+		return key;
 	}
-}
\ No newline at end of file
+}
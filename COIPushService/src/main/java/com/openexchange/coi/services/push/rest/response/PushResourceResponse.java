@@ -1,6 +1,7 @@
 package com.openexchange.coi.services.push.rest.response;
 
 import java.util.Base64;
+import com.openexchange.coi.services.push.crypto.keys.parsing.KeyConverter;
 import com.openexchange.coi.services.push.storage.PushResource;
 import com.openexchange.coi.services.push.storage.mysql.entities.PushResourceImpl;
 import lombok.Getter;
@@ -45,7 +46,7 @@ public class PushResourceResponse {
         lastModified = res.getLastModified().getTime();
         pushToken = res.getPushToken();
         transport = res.getTransport();
-        publicKey = new String(Base64.getEncoder().encodeToString(res.getPublicKey()));
+        publicKey = new String(Base64.getEncoder().encodeToString(KeyConverter.toDER(res.getPublicKey())));
         this.endpoint = endpoint;
     }
     
@@ -0,0 +1,302 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.retry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * {@link JournalSegment} - a memory mapped, append-only file of the {@link RetryJournal}.
+ * <p>
+ * Each record has the following layout:
+ *
+ * <pre>
+ * int    length of the record
+ * byte   state (pending or done)
+ * int    attempt
+ * long   next attempt
+ * long   created
+ * short  length of the resource id
+ * byte[] resource id
+ * int    length of the payload
+ * byte[] payload
+ * int    crc32 of all fields after the state
+ * </pre>
+ *
+ * Records are never changed except for their state, which is set to done once the push message has been sent, dropped or re-appended.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+class JournalSegment {
+
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+
+    /**
+     * The size of all fixed size fields of a record
+     */
+    static final int RECORD_OVERHEAD = 4 + 1 + 4 + 8 + 8 + 2 + 4 + 4;
+
+    private static final int STATE_OFFSET = 4;
+    private static final int CRC_START = 5;
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private int position = 0;
+    private int live = 0;
+    private int total = 0;
+
+    /**
+     * Initializes a new {@link JournalSegment}.
+     *
+     * @param id The id of the segment
+     * @param path The path of the segment file
+     * @param size The size of the segment in bytes
+     * @throws IOException in case the segment file can't be mapped
+     */
+    JournalSegment(long id, Path path, int size) throws IOException {
+        super();
+        this.id = id;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long mapSize = Math.max(size, channel.size());
+        this.buffer = channel.map(MapMode.READ_WRITE, 0, mapSize);
+    }
+
+    /**
+     * Reads all valid records of the segment and positions the segment after the last valid record
+     *
+     * @return The pending entries of the segment
+     */
+    List<RetryEntry> recover() {
+        List<RetryEntry> result = new ArrayList<>();
+        int offset = 0;
+        while (offset + RECORD_OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < RECORD_OVERHEAD || offset + length > buffer.capacity() || isValid(offset, length) == false) {
+                // End of segment or a torn write
+                break;
+            }
+            total++;
+            if (buffer.get(offset + STATE_OFFSET) == PENDING) {
+                live++;
+                result.add(readEntry(offset));
+            }
+            offset += length;
+        }
+        position = offset;
+        return result;
+    }
+
+    /**
+     * Appends a new pending record
+     *
+     * @param resourceId The id of the push resource
+     * @param payload The push message
+     * @param attempt The number of failed attempts
+     * @param nextAttempt The time of the next attempt
+     * @param created The time the push message has been received
+     * @return The {@link RetryEntry} or <code>null</code> if the segment is full
+     */
+    RetryEntry append(String resourceId, byte[] payload, int attempt, long nextAttempt, long created) {
+        byte[] idBytes = resourceId.getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_OVERHEAD + idBytes.length + payload.length;
+        if (position + length > buffer.capacity()) {
+            return null;
+        }
+        int offset = position;
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        record.putInt(length);
+        record.put(PENDING);
+        record.putInt(attempt);
+        record.putLong(nextAttempt);
+        record.putLong(created);
+        record.putShort((short) idBytes.length);
+        record.put(idBytes);
+        record.putInt(payload.length);
+        record.put(payload);
+        record.putInt(crc(offset, length));
+        position += length;
+        live++;
+        total++;
+        return new RetryEntry(this, offset, resourceId, attempt, nextAttempt, created);
+    }
+
+    /**
+     * Reads the payload of the record at the given offset
+     *
+     * @param offset The offset of the record
+     * @return The payload
+     */
+    byte[] readPayload(int offset) {
+        int idLength = buffer.getShort(offset + 25);
+        int payloadOffset = offset + 27 + idLength;
+        byte[] result = new byte[buffer.getInt(payloadOffset)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(payloadOffset + 4);
+        record.get(result);
+        return result;
+    }
+
+    /**
+     * Marks the record at the given offset as done
+     *
+     * @param offset The offset of the record
+     */
+    void markDone(int offset) {
+        if (buffer.get(offset + STATE_OFFSET) == PENDING) {
+            buffer.put(offset + STATE_OFFSET, DONE);
+            live--;
+        }
+    }
+
+    /**
+     * Flushes the segment to disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the segment
+     *
+     * @throws IOException in case the segment file can't be closed
+     */
+    void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * Closes the segment and deletes the segment file
+     *
+     * @throws IOException in case the segment file can't be deleted
+     */
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Gets the id of the segment
+     *
+     * @return The id
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Gets the number of pending records
+     *
+     * @return The number of pending records
+     */
+    int getLive() {
+        return live;
+    }
+
+    /**
+     * Gets the number of records
+     *
+     * @return The number of records
+     */
+    int getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the number of used bytes
+     *
+     * @return The number of used bytes
+     */
+    int getPosition() {
+        return position;
+    }
+
+    private RetryEntry readEntry(int offset) {
+        int attempt = buffer.getInt(offset + 5);
+        long nextAttempt = buffer.getLong(offset + 9);
+        long created = buffer.getLong(offset + 17);
+        byte[] idBytes = new byte[buffer.getShort(offset + 25)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + 27);
+        record.get(idBytes);
+        return new RetryEntry(this, offset, new String(idBytes, StandardCharsets.UTF_8), attempt, nextAttempt, created);
+    }
+
+    private boolean isValid(int offset, int length) {
+        return buffer.getInt(offset + length - 4) == crc(offset, length);
+    }
+
+    private int crc(int offset, int length) {
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset + CRC_START);
+        data.limit(offset + length - 4);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.retry;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import com.openexchange.coi.services.Profiles;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link RetryConfiguration} provides the configuration for the retry of push messages which couldn't be sent because of transient transport errors
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.push.retry")
+@Profile(Profiles.PUSH)
+public class RetryConfiguration {
+
+    /**
+     * Enables or disables the retry of push messages
+     */
+    @Getter
+    @Setter
+    private boolean enabled = false;
+
+    /**
+     * The directory containing the segments of the retry journal
+     */
+    @Getter
+    @Setter
+    private String directory = "./logs/retry";
+
+    /**
+     * The size of a journal segment in bytes
+     */
+    @Getter
+    @Setter
+    private int segmentSize = 16 * 1024 * 1024;
+
+    /**
+     * The maximum number of journal segments. Push messages are not retried in case the limit is reached.
+     */
+    @Getter
+    @Setter
+    private int maxSegments = 64;
+
+    /**
+     * Segments whose ratio of pending push messages falls below this threshold are compacted
+     */
+    @Getter
+    @Setter
+    private double compactionThreshold = 0.25;
+
+    /**
+     * The maximum number of attempts to send a push message
+     */
+    @Getter
+    @Setter
+    private int maxAttempts = 10;
+
+    /**
+     * The maximum age in seconds of a push message. Older push messages are dropped.
+     */
+    @Getter
+    @Setter
+    private long maxAge = 86400;
+
+    /**
+     * The initial backoff in milliseconds before a push message is retried
+     */
+    @Getter
+    @Setter
+    private long initialBackoff = 1000;
+
+    /**
+     * The maximum backoff in milliseconds before a push message is retried
+     */
+    @Getter
+    @Setter
+    private long maxBackoff = 600000;
+
+    /**
+     * The maximum number of push messages replayed per second
+     */
+    @Getter
+    @Setter
+    private int replayRate = 100;
+
+    /**
+     * The interval in milliseconds in which due push messages are replayed
+     */
+    @Getter
+    @Setter
+    private long interval = 1000;
+
+}
@@ -0,0 +1,97 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.retry;
+
+import lombok.Getter;
+
+/**
+ * {@link RetryEntry} - a pending push message of the {@link RetryJournal}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class RetryEntry {
+
+    @Getter
+    private final String resourceId;
+
+    @Getter
+    private final int attempt;
+
+    @Getter
+    private final long nextAttempt;
+
+    @Getter
+    private final long created;
+
+    final JournalSegment segment;
+    final int offset;
+
+    /**
+     * Initializes a new {@link RetryEntry}.
+     *
+     * @param segment The segment containing the entry
+     * @param offset The offset of the entry within the segment
+     * @param resourceId The id of the push resource
+     * @param attempt The number of failed attempts
+     * @param nextAttempt The time of the next attempt
+     * @param created The time the push message has been received
+     */
+    RetryEntry(JournalSegment segment, int offset, String resourceId, int attempt, long nextAttempt, long created) {
+        super();
+        this.segment = segment;
+        this.offset = offset;
+        this.resourceId = resourceId;
+        this.attempt = attempt;
+        this.nextAttempt = nextAttempt;
+        this.created = created;
+    }
+
+}
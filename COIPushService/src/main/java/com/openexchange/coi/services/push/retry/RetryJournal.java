@@ -0,0 +1,364 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.retry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import com.openexchange.coi.services.Profiles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link RetryJournal} - a durable journal of push messages which couldn't be sent because of transient transport errors.
+ * <p>
+ * The journal consists of memory mapped, append-only {@link JournalSegment}s. New entries are always appended to the newest segment and a new
+ * segment is created once it is full. Segments without pending entries are deleted and sparsely populated segments are compacted by re-appending
+ * their pending entries. The pending entries are recovered from the segments on startup.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+@Profile(Profiles.PUSH)
+public class RetryJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryJournal.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.journal");
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.retry";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+
+    private final RetryConfiguration config;
+    private final TreeMap<Long, JournalSegment> segments = new TreeMap<>();
+    private final PriorityQueue<RetryEntry> pending = new PriorityQueue<>(Comparator.comparingLong(RetryEntry::getNextAttempt));
+
+    private final Counter appendedCounter;
+    private final Counter rejectedCounter;
+    private final Counter compactedCounter;
+
+    private JournalSegment active;
+
+    /**
+     * Initializes a new {@link RetryJournal}.
+     *
+     * @param config The {@link RetryConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public RetryJournal(RetryConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        Gauge.builder(METRIC_NAME, this, RetryJournal::getPending).tag(METRIC_TYPE, "pending").register(registry);
+        Gauge.builder(METRIC_NAME, this, RetryJournal::getSegments).tag(METRIC_TYPE, "segments").register(registry);
+        appendedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "appended").register(registry);
+        rejectedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "rejected").register(registry);
+        compactedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "compacted").register(registry);
+    }
+
+    /**
+     * Opens the existing segments and recovers their pending entries
+     *
+     * @throws IOException in case the journal directory can't be read
+     */
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (config.isEnabled() == false) {
+            return;
+        }
+        Path directory = Paths.get(config.getDirectory());
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Iterator<Path> it = files.iterator(); it.hasNext();) {
+                Path file = it.next();
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() == false) {
+                    continue;
+                }
+                JournalSegment segment = new JournalSegment(Long.parseLong(matcher.group(1)), file, config.getSegmentSize());
+                pending.addAll(segment.recover());
+                segments.put(Long.valueOf(segment.getId()), segment);
+            }
+        }
+        if (segments.isEmpty() == false) {
+            active = segments.lastEntry().getValue();
+        }
+        LOG.info("Recovered {} pending push messages from {} journal segments", pending.size(), segments.size());
+    }
+
+    /**
+     * Whether the retry of push messages is enabled or not
+     *
+     * @return <code>true</code> if enabled, <code>false</code> otherwise
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Appends a push message to the journal
+     *
+     * @param resourceId The id of the push resource
+     * @param payload The push message
+     * @return <code>true</code> if the push message has been appended, <code>false</code> if the journal is disabled or full
+     */
+    public synchronized boolean append(String resourceId, byte[] payload) {
+        if (config.isEnabled() == false) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (append(resourceId, payload, 0, now + config.getInitialBackoff(), now) == null) {
+            rejectedCounter.increment();
+            return false;
+        }
+        appendedCounter.increment();
+        return true;
+    }
+
+    /**
+     * Removes and returns the entries which are due
+     *
+     * @param max The maximum number of entries
+     * @return The due entries ordered by their next attempt
+     */
+    public synchronized List<RetryEntry> pollDue(int max) {
+        List<RetryEntry> result = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        while (result.size() < max && pending.isEmpty() == false && pending.peek().getNextAttempt() <= now) {
+            result.add(pending.poll());
+        }
+        return result;
+    }
+
+    /**
+     * Reads the push message of the given entry
+     *
+     * @param entry The {@link RetryEntry}
+     * @return The push message
+     */
+    public synchronized byte[] getPayload(RetryEntry entry) {
+        return entry.segment.readPayload(entry.offset);
+    }
+
+    /**
+     * Marks the given entry as done, e.g. because it has been sent or dropped
+     *
+     * @param entry The {@link RetryEntry}
+     */
+    public synchronized void complete(RetryEntry entry) {
+        entry.segment.markDone(entry.offset);
+    }
+
+    /**
+     * Re-appends the given entry with an increased attempt count
+     *
+     * @param entry The {@link RetryEntry}
+     * @param nextAttempt The time of the next attempt
+     * @return <code>true</code> if the entry has been rescheduled, <code>false</code> if the journal is full and the entry has been dropped
+     */
+    public synchronized boolean reschedule(RetryEntry entry, long nextAttempt) {
+        byte[] payload = getPayload(entry);
+        RetryEntry next = append(entry.getResourceId(), payload, entry.getAttempt() + 1, nextAttempt, entry.getCreated());
+        entry.segment.markDone(entry.offset);
+        return next != null;
+    }
+
+    /**
+     * Deletes segments without pending entries and compacts sparsely populated segments
+     */
+    public synchronized void compact() {
+        // Relocating entries may create new segments
+        for (JournalSegment segment : new ArrayList<>(segments.values())) {
+            if (segment == active) {
+                continue;
+            }
+            if (segment.getLive() > 0) {
+                if (segment.getLive() >= segment.getTotal() * config.getCompactionThreshold() || relocate(segment) == false) {
+                    continue;
+                }
+                compactedCounter.increment();
+            }
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                LOG.warn("Unable to delete journal segment {}", Long.valueOf(segment.getId()), e);
+            }
+            segments.remove(Long.valueOf(segment.getId()));
+        }
+        if (active != null) {
+            active.force();
+        }
+    }
+
+    /**
+     * Closes all segments
+     */
+    @PreDestroy
+    public synchronized void close() {
+        for (JournalSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close journal segment {}", Long.valueOf(segment.getId()), e);
+            }
+        }
+        segments.clear();
+        pending.clear();
+        active = null;
+    }
+
+    /**
+     * Gets the number of pending entries
+     *
+     * @return The number of pending entries
+     */
+    public synchronized int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the number of segments
+     *
+     * @return The number of segments
+     */
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Gets the maximum age of a push message in milliseconds
+     *
+     * @return The maximum age
+     */
+    long getMaxAge() {
+        return TimeUnit.SECONDS.toMillis(config.getMaxAge());
+    }
+
+    /**
+     * Moves the pending entries of the given segment to the active segment
+     *
+     * @param segment The segment to compact
+     * @return <code>true</code> if all entries have been moved, <code>false</code> otherwise
+     */
+    private boolean relocate(JournalSegment segment) {
+        List<RetryEntry> moved = new ArrayList<>();
+        for (Iterator<RetryEntry> it = pending.iterator(); it.hasNext();) {
+            RetryEntry entry = it.next();
+            if (entry.segment == segment) {
+                moved.add(entry);
+                it.remove();
+            }
+        }
+        boolean result = true;
+        for (RetryEntry entry : moved) {
+            RetryEntry copy = append(entry.getResourceId(), getPayload(entry), entry.getAttempt(), entry.getNextAttempt(), entry.getCreated());
+            if (copy == null) {
+                // Keep the remaining entries in place
+                pending.add(entry);
+                result = false;
+                continue;
+            }
+            entry.segment.markDone(entry.offset);
+        }
+        return result;
+    }
+
+    /**
+     * Appends an entry to the active segment and rolls over to a new segment if necessary
+     *
+     * @return The {@link RetryEntry} or <code>null</code> if the journal is full or the entry can't be written
+     */
+    private RetryEntry append(String resourceId, byte[] payload, int attempt, long nextAttempt, long created) {
+        try {
+            RetryEntry entry = active == null ? null : active.append(resourceId, payload, attempt, nextAttempt, created);
+            if (entry == null) {
+                if (segments.size() >= config.getMaxSegments()) {
+                    LOG.warn("Retry journal is full. Dropping push message for resource {}", resourceId);
+                    return null;
+                }
+                long id = active == null ? 0 : active.getId() + 1;
+                int size = Math.max(config.getSegmentSize(), JournalSegment.RECORD_OVERHEAD + resourceId.length() * 4 + payload.length);
+                JournalSegment segment = new JournalSegment(id, Paths.get(config.getDirectory(), String.format("segment-%016d.journal", Long.valueOf(id))), size);
+                segments.put(Long.valueOf(id), segment);
+                active = segment;
+                entry = segment.append(resourceId, payload, attempt, nextAttempt, created);
+            }
+            if (entry != null) {
+                pending.add(entry);
+            }
+            return entry;
+        } catch (IOException e) {
+            LOG.error("Unable to write to the retry journal", e);
+            return null;
+        }
+    }
+
+}
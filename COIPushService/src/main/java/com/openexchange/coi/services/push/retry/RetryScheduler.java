@@ -0,0 +1,284 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.retry;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.dispatch.PushDispatcher;
+import com.openexchange.coi.services.push.storage.PushResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link RetryScheduler} periodically replays the due push messages of the {@link RetryJournal}. Push messages which fail again because of a
+ * transient transport error are rescheduled with an exponential backoff and jitter until they either exceed the maximum number of attempts or
+ * the maximum age.
+ * <p>
+ * The replays run on a thread of their own. The next replay is scheduled once all push messages of the previous one are completed, without
+ * blocking any thread in the meantime.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+@Profile(Profiles.PUSH)
+public class RetryScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.retry";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+
+    private final RetryConfiguration config;
+    private final RetryJournal journal;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    @Autowired
+    private PushService pushService;
+
+    @Autowired
+    private PushDispatcher dispatcher;
+
+    private final Timer timer;
+    private final Counter replayedCounter;
+    private final Counter rescheduledCounter;
+    private final Counter droppedCounter;
+
+    /**
+     * Initializes a new {@link RetryScheduler}.
+     *
+     * @param config The {@link RetryConfiguration}
+     * @param journal The {@link RetryJournal}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public RetryScheduler(RetryConfiguration config, RetryJournal journal, MeterRegistry registry) {
+        super();
+        this.config = config;
+        this.journal = journal;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("push-retry-"));
+        timer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "timer").register(registry);
+        replayedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "replayed").register(registry);
+        rescheduledCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "rescheduled").register(registry);
+        droppedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "dropped").register(registry);
+    }
+
+    /**
+     * Schedules the first replay
+     */
+    @PostConstruct
+    public void init() {
+        schedule();
+    }
+
+    /**
+     * Stops the replays. Push messages which are not completed yet stay in the journal.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Schedules the next replay after the configured interval
+     */
+    private void schedule() {
+        try {
+            scheduler.schedule(this::run, Math.max(1, config.getInterval()), MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down
+        }
+    }
+
+    /**
+     * Runs a replay and schedules the next one once it is completed
+     */
+    private void run() {
+        CompletableFuture<Void> replay;
+        try {
+            replay = replay();
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to replay push messages", e);
+            schedule();
+            return;
+        }
+        replay.whenComplete((v, t) -> {
+            if (t != null) {
+                LOG.warn("Unable to replay push messages", t);
+            }
+            schedule();
+        });
+    }
+
+    /**
+     * Replays the due push messages and compacts the journal afterwards
+     *
+     * @return A {@link CompletableFuture} which is completed once all replayed push messages are completed and the journal is compacted
+     */
+    public CompletableFuture<Void> replay() {
+        if (journal.isEnabled() == false) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = System.nanoTime();
+        int budget = (int) Math.max(1, Math.ceil(config.getReplayRate() * config.getInterval() / 1000d));
+        List<RetryEntry> due = journal.pollDue(budget);
+        if (due.isEmpty()) {
+            journal.compact();
+            return CompletableFuture.completedFuture(null);
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(due.size());
+        for (RetryEntry entry : due) {
+            futures.add(replay(entry));
+        }
+        // Compaction rewrites the journal segments, so it runs on the replay thread rather than the one completing the last push message
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+            timer.record(System.nanoTime() - start, NANOSECONDS);
+            LOG.debug("Replayed {} push messages", Integer.valueOf(due.size()));
+            journal.compact();
+        }, scheduler);
+    }
+
+    /**
+     * Replays a single push message
+     *
+     * @param entry The {@link RetryEntry}
+     * @return A {@link CompletableFuture} which is completed once the entry is completed, rescheduled or dropped
+     */
+    private CompletableFuture<Void> replay(RetryEntry entry) {
+        long now = System.currentTimeMillis();
+        if (now - entry.getCreated() > journal.getMaxAge()) {
+            LOG.debug("Dropping expired push message for resource {}", entry.getResourceId());
+            drop(entry);
+            return CompletableFuture.completedFuture(null);
+        }
+        PushResource resource;
+        try {
+            resource = pushService.findById(entry.getResourceId());
+        } catch (CoiServiceException e) {
+            // The push resource has been removed in the meantime
+            drop(entry);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            // E.g. the database is temporarily unavailable
+            LOG.debug("Unable to load push resource {}", entry.getResourceId(), e);
+            if (journal.reschedule(entry, now + getBackoff(entry.getAttempt() + 1))) {
+                rescheduledCounter.increment();
+            } else {
+                droppedCounter.increment();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return dispatcher.deliverAsync(resource, journal.getPayload(entry)).handle((v, t) -> {
+            if (t == null) {
+                replayedCounter.increment();
+                journal.complete(entry);
+                return null;
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (PushDispatcher.isTransient(cause) && entry.getAttempt() + 1 < config.getMaxAttempts()) {
+                if (journal.reschedule(entry, now + getBackoff(entry.getAttempt() + 1))) {
+                    rescheduledCounter.increment();
+                } else {
+                    droppedCounter.increment();
+                }
+                return null;
+            }
+            LOG.debug("Dropping push message for resource {} after {} attempts", entry.getResourceId(), Integer.valueOf(entry.getAttempt() + 1), cause);
+            drop(entry);
+            return null;
+        });
+    }
+
+    /**
+     * Gets the backoff for the given attempt. The backoff grows exponentially and half of it is randomized to spread the retries.
+     *
+     * @param attempt The attempt
+     * @return The backoff in milliseconds
+     */
+    private long getBackoff(int attempt) {
+        long delay = config.getInitialBackoff() << Math.min(attempt, 30);
+        if (delay <= 0 || delay > config.getMaxBackoff()) {
+            delay = config.getMaxBackoff();
+        }
+        long half = Math.max(1, delay / 2);
+        return half + ThreadLocalRandom.current().nextLong(half);
+    }
+
+    /**
+     * Drops the given entry
+     *
+     * @param entry The {@link RetryEntry}
+     */
+    private void drop(RetryEntry entry) {
+        droppedCounter.increment();
+        journal.complete(entry);
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.util.UUIDs;
+import com.openexchange.coi.services.util.caching.CacheConfig;
+import com.openexchange.coi.services.util.caching.CacheProvider;
+import com.openexchange.coi.services.util.caching.CaffeineCaches;
+import com.openexchange.coi.services.util.caching.DeactivatableCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link PushResourceCache} caches the {@link PushResource}s loaded from the {@link PushResourceStorage}.
+ * <p>
+ * Entries have a soft and a hard time to live. Once the soft time to live is exceeded the next lookup still gets the cached push resource while
+ * it is reloaded in the background. Only entries which aren't accessed until the hard time to live is exceeded are removed and need to be loaded
+ * synchronously again. Concurrent lookups of the same missing push resource share a single load.
+ * <p>
+ * Ids of push resources which don't exist are remembered for a while as tombstones, so that stale push endpoints don't cause a database query
+ * each time. Tombstones are removed once a push resource with the id is saved. Since the ids of new push resources are generated on save, a
+ * lookup can't race with the creation of the push resource.
+ * <p>
+ * The size and the times to live can be changed at runtime, the cached push resources are kept. Refreshing can only be changed at runtime if it
+ * has been enabled on startup.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Profile(Profiles.PUSH)
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.cache")
+public class PushResourceCache implements CacheProvider, CacheConfig {
+
+    private static final String CACHE_KEY = "resource";
+    private static final String TOMBSTONES_KEY = "resource.tombstones";
+    private static final String METRIC_NAME = "com.openexchange.coi.services.cache";
+
+    /** Whether push resources are cached or not */
+    @Getter
+    @Setter
+    private boolean enabled = false;
+
+    /** The maximum number of cached push resources */
+    @Getter
+    @Setter
+    private long max = 100000;
+
+    /** The hard time to live in minutes after which a push resource is removed from the cache */
+    @Getter
+    @Setter
+    private long expire = 60;
+
+    /** The soft time to live in minutes after which a push resource is reloaded in the background on its next lookup */
+    @Getter
+    @Setter
+    private long refresh = 10;
+
+    /** The number of threads loading push resources */
+    @Getter
+    @Setter
+    private int loaders = 4;
+
+    /** The maximum number of remembered ids of missing push resources. <code>0</code> disables the tombstones. */
+    @Getter
+    @Setter
+    private long tombstones = 10000;
+
+    /** The time in minutes after which the id of a missing push resource is forgotten */
+    @Getter
+    @Setter
+    private long tombstoneExpire = 10;
+
+    private final PushResourceStorage storage;
+    private final MeterRegistry registry;
+    private final Counter refreshCounter;
+
+    private ThreadPoolExecutor executor;
+    private AsyncLoadingCache<UUID, PushResource> cache;
+    private Cache<UUID, Boolean> tombstoneCache;
+
+    /**
+     * Initializes a new {@link PushResourceCache}.
+     *
+     * @param storage The {@link PushResourceStorage}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PushResourceCache(PushResourceStorage storage, MeterRegistry registry) {
+        super();
+        this.storage = storage;
+        this.registry = registry;
+        this.refreshCounter = Counter.builder(METRIC_NAME).tag("mtype", "count").tag("type", "refresh").register(registry);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, loaders);
+        if (cache != null) {
+            // The configuration has been re-bound, keep the cached push resources
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+            CaffeineCaches.setMaximumSize(cache.synchronous(), max);
+            CaffeineCaches.setExpireAfterWrite(cache.synchronous(), expire, TimeUnit.MINUTES);
+            CaffeineCaches.setRefreshAfterWrite(cache.synchronous(), refresh, TimeUnit.MINUTES);
+            CaffeineCaches.setMaximumSize(tombstoneCache, tombstones);
+            CaffeineCaches.setExpireAfterWrite(tombstoneCache, tombstoneExpire, TimeUnit.MINUTES);
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("resource-cache-");
+        threadFactory.setDaemon(true);
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(max).expireAfterWrite(expire, TimeUnit.MINUTES).executor(executor).recordStats();
+        if (refresh > 0 && refresh < expire) {
+            builder.refreshAfterWrite(refresh, TimeUnit.MINUTES);
+        }
+        cache = builder.buildAsync(new Loader());
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_KEY);
+        tombstoneCache = Caffeine.newBuilder().maximumSize(Math.max(0, tombstones)).expireAfterWrite(tombstoneExpire, TimeUnit.MINUTES).recordStats().build();
+        CaffeineCacheMetrics.monitor(registry, tombstoneCache, TOMBSTONES_KEY);
+    }
+
+    /**
+     * Gets the push resource with the given id
+     *
+     * @param id The id of the push resource
+     * @return An optional {@link PushResource}
+     */
+    public Optional<PushResource> get(String id) {
+        Optional<UUID> key = UUIDs.parse(id);
+        if (key.isPresent() == false || isTombstone(key.get())) {
+            return Optional.empty();
+        }
+        Optional<PushResource> result = enabled ? Optional.ofNullable(join(cache.get(key.get()))) : storage.getById(id);
+        if (result.isPresent() == false) {
+            addTombstone(key.get());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the push resources with the given ids. Missing push resources are loaded from the storage at once.
+     *
+     * @param ids The ids of the push resources
+     * @return The existing {@link PushResource}s
+     */
+    public Collection<PushResource> getAll(Collection<String> ids) {
+        List<UUID> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            UUIDs.parse(id).filter(key -> isTombstone(key) == false).ifPresent(keys::add);
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collection<PushResource> result = enabled ? join(cache.getAll(keys)).values() : storage.getByIds(toIds(keys));
+        if (tombstones > 0 && result.size() < keys.size()) {
+            Set<UUID> missing = new HashSet<>(keys);
+            result.forEach(r -> missing.remove(UUID.fromString(r.getId())));
+            missing.forEach(this::addTombstone);
+        }
+        return result;
+    }
+
+    /**
+     * Puts the given push resource into the cache
+     *
+     * @param resource The {@link PushResource}
+     */
+    public void put(PushResource resource) {
+        if (resource == null) {
+            return;
+        }
+        UUID key = UUID.fromString(resource.getId());
+        tombstoneCache.invalidate(key);
+        if (enabled) {
+            cache.put(key, CompletableFuture.completedFuture(resource));
+        }
+    }
+
+    /**
+     * Removes the push resource with the given id from the cache and remembers that it doesn't exist anymore
+     *
+     * @param id The id of the deleted push resource
+     */
+    public void remove(String id) {
+        UUIDs.parse(id).ifPresent(key -> {
+            if (enabled) {
+                cache.synchronous().invalidate(key);
+            }
+            addTombstone(key);
+        });
+    }
+
+    private boolean isTombstone(UUID key) {
+        return tombstones > 0 && tombstoneCache.getIfPresent(key) != null;
+    }
+
+    private void addTombstone(UUID key) {
+        if (tombstones > 0) {
+            tombstoneCache.put(key, Boolean.TRUE);
+        }
+    }
+
+    private static List<String> toIds(Collection<? extends UUID> keys) {
+        List<String> result = new ArrayList<>(keys.size());
+        keys.forEach(key -> result.add(key.toString()));
+        return result;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public CacheManager getCacheManager() {
+        SimpleCacheManager result = new SimpleCacheManager();
+        CaffeineCache caffeineCache = new CaffeineCache(CACHE_KEY, (Cache) cache.synchronous(), false);
+        CaffeineCache tombstoneCaffeineCache = new CaffeineCache(TOMBSTONES_KEY, (Cache) tombstoneCache, false);
+        result.setCaches(Arrays.asList(new DeactivatableCache(this, caffeineCache), new DeactivatableCache(() -> tombstones > 0, tombstoneCaffeineCache)));
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    /**
+     * {@link Loader} loads the push resources from the storage. A push resource which doesn't exist anymore is removed from the cache.
+     */
+    private class Loader implements CacheLoader<UUID, PushResource> {
+
+        @Override
+        public PushResource load(UUID key) {
+            return storage.getById(key.toString()).orElse(null);
+        }
+
+        @Override
+        public Map<UUID, PushResource> loadAll(Iterable<? extends UUID> keys) {
+            List<String> ids = new ArrayList<>();
+            keys.forEach(key -> ids.add(key.toString()));
+            Map<UUID, PushResource> result = new HashMap<>(ids.size());
+            for (PushResource resource : storage.getByIds(ids)) {
+                result.put(UUID.fromString(resource.getId()), resource);
+            }
+            return result;
+        }
+
+        @Override
+        public PushResource reload(UUID key, PushResource oldValue) {
+            refreshCounter.increment();
+            return load(key);
+        }
+    }
+
+}
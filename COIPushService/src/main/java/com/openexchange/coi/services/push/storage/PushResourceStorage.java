@@ -49,6 +49,7 @@
 
 package com.openexchange.coi.services.push.storage;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.context.annotation.Profile;
@@ -74,6 +75,14 @@ public interface PushResourceStorage {
      */
     public Optional<PushResource> getById(String id);
 
+    /**
+     * Gets the {@link PushResource}s with the given ids within a single round trip
+     *
+     * @param ids The ids of the push resources
+     * @return The existing {@link PushResource}s in no particular order
+     */
+    public List<PushResource> getByIds(Collection<String> ids);
+
     /**
      * Saves the given {@link PushResource}
      *
@@ -83,6 +92,24 @@ public interface PushResourceStorage {
      */
     public PushResource save(PushResource res) throws CoiServiceException;
 
+    /**
+     * Updates the given {@link PushResource}. Only the properties which differ from the original {@link PushResource} are written.
+     *
+     * @param original The {@link PushResource} as currently stored
+     * @param res The changed {@link PushResource}
+     * @return The updated {@link PushResource}
+     * @throws CoiServiceException
+     */
+    public PushResource update(PushResource original, PushResource res) throws CoiServiceException;
+
+    /**
+     * Writes the validation flag, the expiry date and the last modified date of the given {@link PushResource}s within a single batch. Other
+     * properties are left untouched.
+     *
+     * @param resources The {@link PushResource}s to update
+     */
+    public void touch(Collection<PushResource> resources);
+
     /**
      * Deletes the given {@link PushResource}
      *
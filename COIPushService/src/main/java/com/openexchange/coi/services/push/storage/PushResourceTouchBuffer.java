@@ -0,0 +1,275 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.storage;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import com.openexchange.coi.services.Profiles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link PushResourceTouchBuffer} buffers "touch" updates of push resources, i.e. updates which only change the validation flag, the expiry
+ * date and the last modified date, and writes them behind in JDBC batches.
+ * <p>
+ * Touches of the same push resource are coalesced, so that only the latest one is written. Pending touches are written by a thread of their own
+ * in the configured interval, before any other write of the same push resource and on shutdown. Touches which can't be written are kept for
+ * the next flush. In case the configured maximum of pending touches is reached, further touches are written immediately.
+ * <p>
+ * A touch which is currently written by a flush is tracked until the write completed, so that {@link #flush(String)} waits for it and a
+ * subsequent write of the same push resource isn't overwritten by it.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+@Profile(Profiles.PUSH)
+public class PushResourceTouchBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushResourceTouchBuffer.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.touch";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+
+    private final TouchConfiguration config;
+    private final PushResourceStorage storage;
+    private final Map<String, PushResource> pending = new ConcurrentHashMap<>();
+    /** The ids of the touches which are currently written, guarded by itself */
+    private final Set<String> writing = new HashSet<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final Timer timer;
+    private final Counter writtenCounter;
+    private final Counter coalescedCounter;
+    private final Counter overflowCounter;
+
+    /**
+     * Initializes a new {@link PushResourceTouchBuffer}.
+     *
+     * @param config The {@link TouchConfiguration}
+     * @param storage The {@link PushResourceStorage}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PushResourceTouchBuffer(TouchConfiguration config, PushResourceStorage storage, MeterRegistry registry) {
+        super();
+        this.config = config;
+        this.storage = storage;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("push-touch-"));
+        timer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "timer").register(registry);
+        writtenCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "written").register(registry);
+        coalescedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "coalesced").register(registry);
+        overflowCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "overflow").register(registry);
+        Gauge.builder(METRIC_NAME, pending, Map::size).tag(METRIC_TYPE, "pending").register(registry);
+    }
+
+    /**
+     * Starts writing the pending touches in the configured interval
+     */
+    @PostConstruct
+    public void init() {
+        long interval = Math.max(1, config.getInterval());
+        scheduler.scheduleWithFixedDelay(this::flush, interval, interval, MILLISECONDS);
+    }
+
+    /**
+     * Touches the given push resource
+     *
+     * @param resource The {@link PushResource}
+     */
+    public void touch(PushResource resource) {
+        if (config.isEnabled() == false) {
+            storage.touch(Collections.singletonList(resource));
+            return;
+        }
+        if (pending.size() >= config.getMaxPending() && pending.containsKey(resource.getId()) == false) {
+            overflowCounter.increment();
+            flush(resource.getId());
+            storage.touch(Collections.singletonList(resource));
+            return;
+        }
+        if (pending.put(resource.getId(), resource.clone()) != null) {
+            coalescedCounter.increment();
+        }
+    }
+
+    /**
+     * Writes the pending touch of the given push resource, if any. Waits until a touch of the push resource which is currently written by
+     * another flush is completed.
+     * <p>
+     * A touch which can't be written is dropped rather than retried with the next flush, because the caller is about to write a newer state of the
+     * push resource.
+     *
+     * @param id The id of the push resource
+     */
+    public void flush(String id) {
+        PushResource resource;
+        synchronized (writing) {
+            try {
+                while (writing.contains(id)) {
+                    writing.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            resource = take(id);
+        }
+        if (resource != null) {
+            write(Collections.singletonList(resource), false);
+        }
+    }
+
+    /**
+     * Writes all pending touches
+     */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int size = Math.max(1, config.getBatchSize());
+        int count = 0;
+        List<PushResource> batch = new ArrayList<>(Math.min(size, pending.size()));
+        for (String id : pending.keySet()) {
+            // Removal by key so that touches which arrive in the meantime aren't lost
+            PushResource resource;
+            synchronized (writing) {
+                resource = take(id);
+            }
+            if (resource == null) {
+                continue;
+            }
+            batch.add(resource);
+            if (batch.size() >= size) {
+                count += write(batch, true);
+                batch = new ArrayList<>(size);
+            }
+        }
+        count += write(batch, true);
+        timer.record(System.nanoTime() - start, NANOSECONDS);
+        LOG.debug("Wrote {} pending touches of push resources", Integer.valueOf(count));
+    }
+
+    /**
+     * Stops the scheduled flushes and writes all pending touches
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Removes the pending touch of the given push resource and marks it as being written. Must be called while holding the monitor of
+     * {@link #writing}.
+     *
+     * @param id The id of the push resource
+     * @return The pending touch or <code>null</code>
+     */
+    private PushResource take(String id) {
+        PushResource result = pending.remove(id);
+        if (result != null) {
+            writing.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the given touches within a single batch
+     *
+     * @param batch The touches to write
+     * @param retry <code>true</code> to put touches which can't be written back unless a newer touch is pending, <code>false</code> to pass the
+     *            error on to the caller
+     * @return The number of written touches
+     */
+    private int write(List<PushResource> batch, boolean retry) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            storage.touch(batch);
+        } catch (RuntimeException e) {
+            if (retry == false) {
+                throw e;
+            }
+            LOG.warn("Unable to write {} touches of push resources. Retrying with the next flush.", Integer.valueOf(batch.size()), e);
+            batch.forEach(resource -> pending.putIfAbsent(resource.getId(), resource));
+            return 0;
+        } finally {
+            synchronized (writing) {
+                batch.forEach(resource -> writing.remove(resource.getId()));
+                writing.notifyAll();
+            }
+        }
+        writtenCounter.increment(batch.size());
+        return batch.size();
+    }
+
+}
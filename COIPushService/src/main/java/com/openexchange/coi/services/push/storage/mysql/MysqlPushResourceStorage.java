@@ -54,13 +54,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -71,6 +78,9 @@ import com.openexchange.coi.services.push.storage.PushResource;
 import com.openexchange.coi.services.push.storage.PushResourceField;
 import com.openexchange.coi.services.push.storage.PushResourceStorage;
 import com.openexchange.coi.services.push.storage.mysql.mapper.PushResourceMapper;
+import com.openexchange.coi.services.util.UUIDs;
+import com.openexchange.coi.services.util.purge.ExpiringStorage;
+import com.openexchange.coi.services.util.purge.ExpiryBuckets;
 
 /**
  * {@link MysqlPushResourceStorage}
@@ -80,20 +90,42 @@ import com.openexchange.coi.services.push.storage.mysql.mapper.PushResourceMappe
  */
 @Service
 @Profile(Profiles.PUSH + " & " + Profiles.MYSQL)
-public class MysqlPushResourceStorage implements PushResourceStorage {
+public class MysqlPushResourceStorage implements PushResourceStorage, ExpiringStorage {
 
     private static final String SELECT = "SELECT * FROM pushresources WHERE id=?";
+    private static final String SELECT_IN = "SELECT * FROM pushresources WHERE id IN (";
     private static final String LIST = "SELECT * FROM pushresources ORDER BY id LIMIT ?,?;";
     private static final String INSERT = "INSERT INTO pushresources (";
     private static final String UPDATE = "UPDATE pushresources SET ";
     private static final String DELETE = "DELETE FROM pushresources WHERE id=?;";
-    private static final String CLEAN = "DELETE FROM pushresources WHERE expiredate<=?;";
+    private static final String EXPIRED = "SELECT id FROM pushresources WHERE expiredate<=? ORDER BY expiredate LIMIT ?;";
+    private static final String DELETE_EXPIRED = "DELETE FROM pushresources WHERE expiredate<=? AND id IN (";
+
+    /**
+     * The maximum number of ids within a single IN clause. Larger lookups are split into several queries.
+     */
+    private static final int MAX_IN_SIZE = 500;
 
     private static final PushResourceMapper MAPPER = PushResourceMapper.getInstance();
 
+    /**
+     * The fields written by {@link #touch(Collection)}
+     */
+    private static final PushResourceField[] TOUCH_FIELDS = { PushResourceField.validated, PushResourceField.expireDate, PushResourceField.lastModified };
+
     @Autowired
     JdbcTemplate template;
 
+    /**
+     * Whether the table is partitioned by {@link ExpiryBuckets} or not. Determined on first use.
+     */
+    private volatile Boolean partitioned;
+
+    /**
+     * The UPDATE statements per set of updated fields
+     */
+    private final Map<Set<PushResourceField>, String> updateStatements = new ConcurrentHashMap<>();
+
     /**
      * Gets the {@link PushResource} by its id
      *
@@ -101,7 +133,11 @@ public class MysqlPushResourceStorage implements PushResourceStorage {
      * @return The {@link PushResource} or null
      */
     public Optional<PushResource> getById(String id) {
-        return Optional.ofNullable(template.query(SELECT, (ps) -> ps.setString(1, id), new ResultSetExtractor<PushResource>() {
+        Optional<UUID> uuid = UUIDs.parse(id);
+        if (uuid.isPresent() == false) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(template.query(SELECT, (ps) -> ps.setBytes(1, UUIDs.toBytes(uuid.get())), new ResultSetExtractor<PushResource>() {
 
             @Override
             public PushResource extractData(ResultSet rs) throws SQLException, DataAccessException {
@@ -117,6 +153,56 @@ public class MysqlPushResourceStorage implements PushResourceStorage {
         }));
     }
 
+    @Override
+    public List<PushResource> getByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<byte[]> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            UUIDs.parse(id).ifPresent(uuid -> list.add(UUIDs.toBytes(uuid)));
+        }
+        List<PushResource> result = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i += MAX_IN_SIZE) {
+            result.addAll(getChunk(list.subList(i, Math.min(list.size(), i + MAX_IN_SIZE))));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the {@link PushResource}s with the given ids within a single query
+     *
+     * @param ids The ids of the push resources. Must not contain more than {@link #MAX_IN_SIZE} ids.
+     * @return The existing {@link PushResource}s
+     */
+    private List<PushResource> getChunk(List<byte[]> ids) {
+        StringBuilder sql = new StringBuilder(SELECT_IN);
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(");");
+        return template.query(sql.toString(), (ps) -> {
+            int index = 1;
+            for (byte[] id : ids) {
+                ps.setBytes(index++, id);
+            }
+        }, new ResultSetExtractor<List<PushResource>>() {
+
+            @Override
+            public List<PushResource> extractData(ResultSet rs) throws SQLException, DataAccessException {
+                List<PushResource> result = new ArrayList<>(ids.size());
+                while (rs.next()) {
+                    try {
+                        result.add(toPushResource(rs));
+                    } catch (CoiServiceException e) {
+                        throw asDataAccessException(e, "Unable to extract PushResource from resultset");
+                    }
+                }
+                return result;
+            }
+        });
+    }
+
     /**
      * Converts a {@link ResultSet} into a {@link PushResource}
      *
@@ -144,14 +230,20 @@ public class MysqlPushResourceStorage implements PushResourceStorage {
 
             StringBuilder sql = new StringBuilder(INSERT);
             sql.append(MAPPER.getColumns(fields));
-            sql.append(") VALUES (").append(MAPPER.getParameters(fields)).append(");");
+            if (isPartitioned()) {
+                sql.append(",").append(ExpiryBuckets.COLUMN);
+            }
+            sql.append(") VALUES (").append(MAPPER.getParameters(fields)).append(isPartitioned() ? ",?);" : ");");
 
             return template.execute(sql.toString(), new PreparedStatementCallback<PushResource>() {
 
                 @Override
                 public PushResource doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
                     try {
-                        MAPPER.setParameters(ps, resource, fields);
+                        int index = MAPPER.setParameters(ps, 1, resource, fields);
+                        if (isPartitioned()) {
+                            ps.setInt(index, ExpiryBuckets.of(resource.getExpireDate()));
+                        }
                         ps.execute();
                     } catch (CoiServiceException e) {
                         throw asDataAccessException(e, "Unable to set parameters.");
@@ -159,26 +251,105 @@ public class MysqlPushResourceStorage implements PushResourceStorage {
                     return resource;
                 }
             });
-        } else {
-            StringBuilder sql = new StringBuilder(UPDATE);
-            sql.append(MAPPER.getAssignments(fields));
-            sql.append(" WHERE id=?;");
-            return template.execute(sql.toString(), new PreparedStatementCallback<PushResource>() {
+        }
+        Set<PushResourceField> changed = EnumSet.noneOf(PushResourceField.class);
+        Collections.addAll(changed, fields);
+        changed.remove(PushResourceField.id);
+        return update(resource, changed);
+    }
 
-                @Override
-                public PushResource doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                    try {
-                        int index = 1;
-                        index = MAPPER.setParameters(ps, index, resource, fields);
-                        ps.setString(index, resource.getId());
-                        ps.execute();
-                    } catch (CoiServiceException e) {
-                        throw asDataAccessException(e, "Unable to set parameters.");
+    @Override
+    public PushResource update(PushResource original, PushResource resource) throws CoiServiceException {
+        Set<PushResourceField> changed = EnumSet.noneOf(PushResourceField.class);
+        Collections.addAll(changed, MAPPER.getDifferentFields(original, resource));
+        changed.remove(PushResourceField.id);
+        if (changed.isEmpty()) {
+            // Nothing to write
+            return resource;
+        }
+        return update(resource, changed);
+    }
+
+    /**
+     * Updates the given fields of the {@link PushResource}
+     *
+     * @param resource The {@link PushResource} to update
+     * @param changed The fields to update
+     * @return The updated {@link PushResource}
+     * @throws CoiServiceException If the {@link PushResource} couldn't be updated
+     */
+    private PushResource update(PushResource resource, Set<PushResourceField> changed) throws CoiServiceException {
+        PushResourceField[] fields = changed.toArray(new PushResourceField[changed.size()]);
+        // Moves the entry to the partition of its new expiry
+        boolean bucket = isPartitioned() && changed.contains(PushResourceField.expireDate);
+        String sql = updateStatements.get(changed);
+        if (sql == null) {
+            StringBuilder builder = new StringBuilder(UPDATE);
+            builder.append(MAPPER.getAssignments(fields));
+            if (bucket) {
+                builder.append(",").append(ExpiryBuckets.COLUMN).append("=?");
+            }
+            sql = builder.append(" WHERE id=?;").toString();
+            updateStatements.put(changed, sql);
+        }
+        return template.execute(sql, new PreparedStatementCallback<PushResource>() {
+
+            @Override
+            public PushResource doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
+                try {
+                    int index = MAPPER.setParameters(ps, 1, resource, fields);
+                    if (bucket) {
+                        ps.setInt(index++, ExpiryBuckets.of(resource.getExpireDate()));
                     }
-                    return resource;
+                    ps.setBytes(index, UUIDs.toBytes(resource.getId()));
+                    ps.execute();
+                } catch (CoiServiceException e) {
+                    throw asDataAccessException(e, "Unable to set parameters.");
                 }
-            });
+                return resource;
+            }
+        });
+    }
+
+    @Override
+    public void touch(Collection<PushResource> resources) {
+        if (resources.isEmpty()) {
+            return;
         }
+        List<PushResource> list = resources instanceof List ? (List<PushResource>) resources : new ArrayList<>(resources);
+        StringBuilder sql = new StringBuilder(UPDATE);
+        try {
+            sql.append(MAPPER.getAssignments(TOUCH_FIELDS));
+        } catch (CoiServiceException e) {
+            throw asDataAccessException(e, "Unable to create statement.");
+        }
+        boolean partitioned = isPartitioned();
+        if (partitioned) {
+            // Moves the entry to the partition of its new expiry
+            sql.append(",").append(ExpiryBuckets.COLUMN).append("=?");
+        }
+        sql.append(" WHERE id=?;");
+        template.batchUpdate(sql.toString(), new BatchPreparedStatementSetter() {
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PushResource resource = list.get(i);
+                try {
+                    int index = MAPPER.setParameters(ps, 1, resource, TOUCH_FIELDS);
+                    if (partitioned) {
+                        ps.setInt(index++, ExpiryBuckets.of(resource.getExpireDate()));
+                    }
+                    ps.setBytes(index, UUIDs.toBytes(resource.getId()));
+                } catch (CoiServiceException e) {
+                    throw asDataAccessException(e, "Unable to set parameters.");
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return list.size();
+            }
+        });
     }
 
     /**
@@ -191,30 +362,54 @@ public class MysqlPushResourceStorage implements PushResourceStorage {
 
             @Override
             public Void doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                ps.setString(1, resource.getId());
+                ps.setBytes(1, UUIDs.toBytes(resource.getId()));
                 ps.execute();
                 return null;
             }
         });
     }
 
-    /**
-     * Removes {@link PushResource}s which are expired
-     *
-     * @param date The date to check
-     * @return The number of removed {@link PushResource}s
-     */
-    public int cleanup(Date date) {
-        return template.execute(CLEAN, new PreparedStatementCallback<Integer>() {
+    @Override
+    public List<String> getExpired(Date date, int limit) {
+        return template.query(EXPIRED, (ps) -> {
+            ps.setTimestamp(1, new Timestamp(date.getTime()));
+            ps.setInt(2, limit);
+        }, (rs, rowNum) -> UUIDs.fromBytes(rs.getBytes(1)).toString());
+    }
 
-            @Override
-            public Integer doInPreparedStatement(PreparedStatement ps) throws SQLException, DataAccessException {
-                ps.setTimestamp(1, new Timestamp(date.getTime()));
-                return ps.executeUpdate();
+    @Override
+    public int deleteExpired(List<String> ids, Date date) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder(DELETE_EXPIRED);
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(");");
+        return template.update(sql.toString(), (ps) -> {
+            ps.setTimestamp(1, new Timestamp(date.getTime()));
+            int index = 2;
+            for (String id : ids) {
+                ps.setBytes(index++, UUIDs.toBytes(id));
             }
         });
     }
 
+    /**
+     * Checks whether the table is partitioned by {@link ExpiryBuckets}
+     *
+     * @return <code>true</code> if the table is partitioned, <code>false</code> otherwise
+     */
+    private boolean isPartitioned() {
+        Boolean result = partitioned;
+        if (result == null) {
+            result = Boolean.valueOf(ExpiryBuckets.isPartitioned(template, "pushresources"));
+            partitioned = result;
+        }
+        return result.booleanValue();
+    }
+
     /**
      * Wraps the given exception in an {@link DataAccessException}
      *
@@ -56,8 +56,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.push.storage.PushResourceCache;
+import com.openexchange.coi.services.push.storage.PushResourceTouchBuffer;
+import com.openexchange.coi.services.util.purge.ExpiryPurger;
+import com.openexchange.coi.services.util.purge.PartitionRotation;
 
 /**
  * {@link PushResourceCleanupTask} is a cleanup task for expired push resources
@@ -74,12 +77,43 @@ public class PushResourceCleanupTask {
     @Autowired
     private MysqlPushResourceStorage storage;
 
+    @Autowired
+    private ExpiryPurger purger;
+
+    @Autowired
+    private PartitionRotation rotation;
+
+    /**
+     * Not available on a cleanup only server
+     */
+    @Autowired(required = false)
+    private PushResourceCache cache;
+
+    /**
+     * Not available on a cleanup only server
+     */
+    @Autowired(required = false)
+    private PushResourceTouchBuffer touchBuffer;
+
     @Scheduled(fixedRateString = "${com.openexchange.coi.services.push.database.cleanup:3600000}")
-    @Transactional
     public void cleanInvitations() {
+        purger.execute("pushresources", this::cleanup);
+    }
+
+    private void cleanup() {
         long start = System.currentTimeMillis();
-        int numOfCLeanedUpResources = storage.cleanup(new Date());
-        LOG.info("Push resource cleanup task deleted {} push resources in {} milliseconds.", numOfCLeanedUpResources, System.currentTimeMillis() - start);
+        if (touchBuffer != null) {
+            // Pending touches might extend the expiry of push resources which are about to be purged
+            touchBuffer.flush();
+        }
+        Date now = new Date();
+        int droppedPartitions = rotation.rotate("pushresources", "expiredate", now);
+        int numOfCLeanedUpResources = purger.purge("pushresources", storage, now, ids -> {
+            if (cache != null) {
+                ids.forEach(cache::remove);
+            }
+        });
+        LOG.info("Push resource cleanup task dropped {} partitions and deleted {} push resources in {} milliseconds.", droppedPartitions, numOfCLeanedUpResources, System.currentTimeMillis() - start);
     }
 
 }
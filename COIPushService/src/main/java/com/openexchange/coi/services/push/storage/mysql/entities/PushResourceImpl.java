@@ -55,7 +55,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import javax.persistence.Lob;
 import javax.persistence.Table;
 import org.hibernate.annotations.GenericGenerator;
 import com.openexchange.coi.services.push.storage.PushResource;
@@ -78,7 +77,7 @@ public class PushResourceImpl implements Serializable, PushResource {
     @Id
     @GeneratedValue(generator = "UUID")
     @GenericGenerator(name = "UUID", strategy = "org.hibernate.id.UUIDGenerator")
-    @Column(name = "id", length = 191, updatable = false, nullable = false)
+    @Column(name = "id", columnDefinition = "BINARY(16)", updatable = false, nullable = false)
     @Getter
     @Setter
     private String id;
@@ -110,8 +109,7 @@ public class PushResourceImpl implements Serializable, PushResource {
 
     @Getter
     @Setter
-    @Lob
-    @Column(name = "publickey", nullable = false)
+    @Column(name = "publickey", length = 91, nullable = false)
     private byte[] publicKey;
 
     @Getter
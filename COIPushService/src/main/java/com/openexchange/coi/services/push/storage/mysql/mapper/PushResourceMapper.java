@@ -58,6 +58,7 @@ import com.openexchange.coi.services.util.mapper.DefaultDbMapper;
 import com.openexchange.coi.services.util.mapper.mapping.BinaryMapping;
 import com.openexchange.coi.services.util.mapper.mapping.BooleanMapping;
 import com.openexchange.coi.services.util.mapper.mapping.DateMapping;
+import com.openexchange.coi.services.util.mapper.mapping.UUIDMapping;
 import com.openexchange.coi.services.util.mapper.mapping.VarCharMapping;
 
 /**
@@ -92,11 +93,11 @@ public class PushResourceMapper extends DefaultDbMapper<PushResource, PushResour
         EnumMap<PushResourceField, DbMapping<? extends Object, PushResource>> mappings = new EnumMap<PushResourceField, DbMapping<? extends Object, PushResource>>(PushResourceField.class);
 
         // @formatter:off
-        mappings.put(PushResourceField.id, new VarCharMapping<PushResource>("id", 
-                                                                            "ID", 
-                                                                            (res) -> res.getId() != null, 
-                                                                            (res) -> res.getId(), 
-                                                                            (res, value) -> res.setId(value)));
+        mappings.put(PushResourceField.id, new UUIDMapping<PushResource>("id", 
+                                                                         "ID", 
+                                                                         (res) -> res.getId() != null, 
+                                                                         (res) -> res.getId(), 
+                                                                         (res, value) -> res.setId(value)));
         
         mappings.put(PushResourceField.appid, new VarCharMapping<PushResource>("appid", 
                                                                                "App ID", 
@@ -0,0 +1,142 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.cloud.context.config.annotation.RefreshScope;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import com.openexchange.coi.services.Profiles;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link ApnsConfiguration}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.push.apns")
+@Profile(Profiles.PUSH)
+@RefreshScope
+public class ApnsConfiguration {
+
+    /**
+     * Enables or disables the apns push transport
+     */
+    @Getter
+    @Setter
+    private boolean enabled = false;
+
+    /**
+     * The path to the apns auth key (.p8 file) used to sign the provider tokens
+     */
+    @Getter
+    @Setter
+    private String privateKey = null;
+
+    /**
+     * The id of the apns auth key
+     */
+    @Getter
+    @Setter
+    private String keyId = null;
+
+    /**
+     * The id of the apple developer team
+     */
+    @Getter
+    @Setter
+    private String teamId = null;
+
+    /**
+     * The topic of the push messages. Usually the bundle id of the app.
+     */
+    @Getter
+    @Setter
+    private String topic = null;
+
+    /**
+     * The url of the apns gateway
+     */
+    @Getter
+    @Setter
+    private String url = "https://api.push.apple.com";
+
+    /**
+     * The number of http/2 connections to the apns gateway
+     */
+    @Getter
+    @Setter
+    private int connections = 2;
+
+    /**
+     * The maximum number of concurrent streams per connection
+     */
+    @Getter
+    @Setter
+    private int maxConcurrentStreams = 100;
+
+    /**
+     * The time in seconds after which a new provider token is created. Apple rejects tokens older than one hour.
+     */
+    @Getter
+    @Setter
+    private long tokenTtl = 3000;
+
+    /**
+     * The time in milliseconds to wait for a free stream or a response of the apns gateway
+     */
+    @Getter
+    @Setter
+    private long timeout = 10000;
+
+}
@@ -0,0 +1,175 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.Date;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+
+/**
+ * {@link ApnsProviderToken} creates and caches the signed provider tokens used to authenticate against the apns gateway.
+ * <p>
+ * Apple doesn't allow to refresh the token more than once every 20 minutes and rejects tokens older than one hour.
+ * Therefore the token is reused until the configured time to live has elapsed.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+class ApnsProviderToken {
+
+    private final ECDSASigner signer;
+    private final String keyId;
+    private final String teamId;
+    private final long ttl;
+
+    private volatile String token;
+    private volatile long issuedAt;
+
+    /**
+     * Initializes a new {@link ApnsProviderToken}.
+     *
+     * @param privateKey The private key used to sign the tokens
+     * @param keyId The id of the key
+     * @param teamId The id of the apple developer team
+     * @param ttl The time in milliseconds after which a new token is created
+     * @throws CoiServiceException in case the key can't be used for signing
+     */
+    ApnsProviderToken(ECPrivateKey privateKey, String keyId, String teamId, long ttl) throws CoiServiceException {
+        super();
+        try {
+            this.signer = new ECDSASigner(privateKey);
+        } catch (JOSEException e) {
+            throw CoiServiceExceptionCodes.INVALID_CONFIGURATION.create();
+        }
+        this.keyId = keyId;
+        this.teamId = teamId;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Gets the current provider token and creates a new one if necessary
+     *
+     * @return The provider token
+     * @throws CoiServiceException in case the token couldn't be signed
+     */
+    String get() throws CoiServiceException {
+        String result = token;
+        if (result != null && System.currentTimeMillis() - issuedAt < ttl) {
+            return result;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (token == null || now - issuedAt >= ttl) {
+                token = sign(now);
+                issuedAt = now;
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Invalidates the given token, e.g. because it has been rejected by the apns gateway
+     *
+     * @param rejected The rejected token
+     */
+    synchronized void invalidate(String rejected) {
+        if (rejected != null && rejected.equals(token)) {
+            token = null;
+        }
+    }
+
+    /**
+     * Creates a new signed provider token
+     *
+     * @param now The issue time
+     * @return The signed token
+     * @throws CoiServiceException in case the token couldn't be signed
+     */
+    private String sign(long now) throws CoiServiceException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(keyId).build(), new JWTClaimsSet.Builder().issuer(teamId).issueTime(new Date(now)).build());
+        try {
+            jwt.sign(signer);
+        } catch (JOSEException e) {
+            throw CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(e.getMessage());
+        }
+        return jwt.serialize();
+    }
+
+    /**
+     * Reads an apns auth key from the given PKCS#8 PEM file
+     *
+     * @param file The path to the .p8 file
+     * @return The {@link ECPrivateKey}
+     * @throws IOException in case the file can't be read
+     * @throws GeneralSecurityException in case the file doesn't contain a valid EC key
+     */
+    static ECPrivateKey readPrivateKey(String file) throws IOException, GeneralSecurityException {
+        String pem = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.US_ASCII);
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(Base64.getDecoder().decode(base64));
+        return (ECPrivateKey) KeyFactory.getInstance("EC").generatePrivate(spec);
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link ApnsPushTransport} - a push transport which sends push messages directly to the apple push notification service.
+ * <p>
+ * Push messages are sent over a pool of multiplexed http/2 connections. Each connection allows a limited number of concurrent streams.
+ * Requests are authenticated with signed provider tokens which are cached and renewed periodically.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Service
+@Profile(Profiles.PUSH)
+public class ApnsPushTransport implements PushTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApnsPushTransport.class);
+
+    /**
+     * The payload overhead in bytes, which effectively reduces the maximum possible size of a payload a coi server is allowed to sent.
+     */
+    private static final int PAYLOAD_OVERHEAD = 7;
+
+    /**
+     * The max payload size in bytes
+     */
+    private static final int MAX_PAYLOAD_SIZE = 4000; //4kb
+
+    /**
+     * The effective max payload size in bytes
+     */
+    private static final int MAX_EFFECTIVE_PAYLOAD_SIZE = MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD;
+
+    /**
+     * The time in seconds a coi server is asked to wait in case apns throttles the push messages
+     */
+    private static final String DEFAULT_RETRY_AFTER = "60";
+
+    /**
+     * The time in seconds a coi server is asked to wait in case apns is unavailable
+     */
+    private static final String DEFAULT_UNAVAILABLE_RETRY_AFTER = "10";
+
+    /**
+     * Apns device tokens are hex encoded
+     */
+    private static final Pattern DEVICE_TOKEN = Pattern.compile("[0-9a-fA-F]+");
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.transport.apns";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ApnsConfiguration config;
+    private final MeterRegistry registry;
+
+    private ApnsConnection[] connections = null;
+    private ApnsProviderToken providerToken = null;
+    private Timer timer;
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final Queue<CompletableFuture<ApnsConnection>> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Initializes a new {@link ApnsPushTransport}.
+     *
+     * @param config The {@link ApnsConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public ApnsPushTransport(ApnsConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        this.registry = registry;
+    }
+
+    /**
+     * Initializes the connections to the apns gateway
+     */
+    @PostConstruct
+    public void init() {
+        if (!config.isEnabled()) {
+            LOG.info("The apns transport is disabled and cannot be used!");
+            return;
+        }
+        if (config.getPrivateKey() == null || config.getKeyId() == null || config.getTeamId() == null || config.getTopic() == null) {
+            LOG.error("The apns transport is not configured properly. The private key, key id, team id and topic are required. Please fix the configuration and restart the server!");
+            return;
+        }
+        try {
+            providerToken = new ApnsProviderToken(ApnsProviderToken.readPrivateKey(config.getPrivateKey()), config.getKeyId(), config.getTeamId(), config.getTokenTtl() * 1000);
+        } catch (IOException | GeneralSecurityException | CoiServiceException | IllegalArgumentException e) {
+            LOG.error("Unable to load the apns auth key. Please fix the configuration and restart the server!", e);
+            return;
+        }
+        timer = registry.timer(METRIC_NAME + ".timer");
+        int count = Math.max(1, config.getConnections());
+        ApnsConnection[] result = new ApnsConnection[count];
+        for (int i = 0; i < count; i++) {
+            // Each client maintains its own http/2 connection
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).connectTimeout(Duration.ofMillis(config.getTimeout())).build();
+            result[i] = new ApnsConnection(client, Math.max(1, config.getMaxConcurrentStreams()));
+        }
+        connections = result;
+        Gauge.builder(METRIC_NAME + ".streams", this, ApnsPushTransport::getActiveStreams).register(registry);
+    }
+
+    @Override
+    public void transport(String token, boolean resourceValidated, byte[] data) throws CoiServiceException {
+        try {
+            transportAsync(token, resourceValidated, data).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CoiServiceException) {
+                throw (CoiServiceException) e.getCause();
+            }
+            throw CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+        if (connections == null) {
+            LOG.error("Apns transport not available. Probably a configuration issue. Fix the configuration and restart the server!");
+            return CompletableFuture.failedFuture(CoiServiceExceptionCodes.INVALID_CONFIGURATION.create());
+        }
+        if (token == null || DEVICE_TOKEN.matcher(token).matches() == false) {
+            // Would be an illegal or foreign url otherwise
+            return CompletableFuture.failedFuture(CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create());
+        }
+        byte[] base64data = Base64.getEncoder().encode(data);
+        if (base64data.length > MAX_EFFECTIVE_PAYLOAD_SIZE) {
+            return CompletableFuture.failedFuture(CoiServiceExceptionCodes.MAX_PUSH_SIZE_EXCEEDED.create(MAX_EFFECTIVE_PAYLOAD_SIZE));
+        }
+        String jwt;
+        byte[] payload;
+        try {
+            jwt = providerToken.get();
+            payload = createPayload(new String(base64data, StandardCharsets.UTF_8), resourceValidated);
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // @formatter:off
+        HttpRequest request = HttpRequest.newBuilder(URI.create(config.getUrl() + "/3/device/" + token))
+                                         .timeout(Duration.ofMillis(config.getTimeout()))
+                                         .header("authorization", "bearer " + jwt)
+                                         .header("apns-topic", config.getTopic())
+                                         //The first (un-validated) push message should be a "Background Update Notification" which requires a lower priority
+                                         .header("apns-push-type", resourceValidated ? "alert" : "background")
+                                         .header("apns-priority", resourceValidated ? "10" : "5")
+                                         .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                                         .build();
+        // @formatter:on
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        acquire().whenComplete((connection, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof TimeoutException ? CoiServiceExceptionCodes.UNEXPECTED_ERROR.create("No free apns stream available") : error);
+                return;
+            }
+            connection.client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, t) -> {
+                release(connection);
+                if (t != null) {
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    LOG.debug("Unable to send push message to apns", cause);
+                    result.completeExceptionally(CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(cause.getMessage()));
+                    return;
+                }
+                try {
+                    handleResponse(response, jwt);
+                    timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+                    result.complete(null);
+                } catch (CoiServiceException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Creates the apns payload
+     *
+     * @param content The base64 encoded content
+     * @param resourceValidated Indicates if the resource, which should get the notification data, is already validated by a push round trip
+     * @return The json payload
+     * @throws CoiServiceException in case the payload couldn't be created
+     */
+    private byte[] createPayload(String content, boolean resourceValidated) throws CoiServiceException {
+        Map<String, Object> aps = new LinkedHashMap<>(2);
+        if (resourceValidated) {
+            aps.put("sound", "default");
+            aps.put("mutable-content", Integer.valueOf(1));
+        } else {
+            //The first (un-validated) push message should be a "Background Update Notification": therefore setting the contenAvailable flag only.
+            //Apns throttles or drops background notifications with alert attributes.
+            aps.put("content-available", Integer.valueOf(1));
+        }
+        Map<String, Object> payload = new LinkedHashMap<>(2);
+        payload.put("aps", aps);
+        payload.put("content", content);
+        try {
+            return MAPPER.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(e.getMessage());
+        }
+    }
+
+    /**
+     * Handles the response of the apns gateway. E.g. by throwing an adequate {@link CoiServiceException}
+     *
+     * @param response The {@link HttpResponse}
+     * @param jwt The provider token used for the request
+     * @throws CoiServiceException
+     */
+    private void handleResponse(HttpResponse<String> response, String jwt) throws CoiServiceException {
+        int statusCode = response.statusCode();
+        if (statusCode == 200) {
+            LOG.debug("Successfully sent message: {}", response.headers().firstValue("apns-id").orElse(null));
+            return;
+        }
+        String reason = getReason(response.body());
+        if (statusCode == 410 || (statusCode == 400 && ("BadDeviceToken".equals(reason) || "DeviceTokenNotForTopic".equals(reason)))) {
+            throw CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create();
+        }
+        if (statusCode == 429) {
+            // Too many requests for the same device token or quota exceeded
+            LOG.error("Apns throttled the push messages. Currenlty unable to send push messages.");
+            throw CoiServiceExceptionCodes.QUOTA_EXCEEDED.create(response.headers().firstValue("retry-after").orElse(DEFAULT_RETRY_AFTER));
+        }
+        if (statusCode == 403 && ("ExpiredProviderToken".equals(reason) || "InvalidProviderToken".equals(reason))) {
+            // Create a new token for the next request
+            providerToken.invalidate(jwt);
+            LOG.error("Apns rejected the provider token: {}", reason);
+            throw CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(reason);
+        }
+        if (statusCode >= 500) {
+            // Internal server errors or apns is temporarily unavailable
+            throw CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create(Transport.apns.name(), response.headers().firstValue("retry-after").orElse(DEFAULT_UNAVAILABLE_RETRY_AFTER));
+        }
+        // Other errors
+        LOG.warn("Unable to send push message to apns. Status: {}, reason: {}", Integer.valueOf(statusCode), reason);
+    }
+
+    /**
+     * Gets the reason of an apns error response
+     *
+     * @param body The response body
+     * @return The reason or <code>null</code>
+     */
+    private String getReason(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonNode reason = MAPPER.readTree(body).get("reason");
+            return reason == null ? null : reason.asText();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Acquires a free stream of one of the connections
+     *
+     * @return A {@link CompletableFuture} which is completed with the {@link ApnsConnection} once a stream is available
+     */
+    private CompletableFuture<ApnsConnection> acquire() {
+        ApnsConnection connection = tryAcquire();
+        if (connection != null) {
+            return CompletableFuture.completedFuture(connection);
+        }
+        CompletableFuture<ApnsConnection> result = new CompletableFuture<>();
+        waiting.add(result);
+        // A stream might have been released in the meantime
+        dispatchWaiting();
+        return result.orTimeout(config.getTimeout(), MILLISECONDS);
+    }
+
+    /**
+     * Tries to acquire a free stream without waiting
+     *
+     * @return The {@link ApnsConnection} with the acquired stream or <code>null</code> if all streams are in use
+     */
+    private ApnsConnection tryAcquire() {
+        ApnsConnection[] cons = connections;
+        int offset = Math.floorMod(nextConnection.getAndIncrement(), cons.length);
+        for (int i = 0; i < cons.length; i++) {
+            ApnsConnection connection = cons[(offset + i) % cons.length];
+            if (connection.streams.tryAcquire()) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the stream of the given connection and hands it over to a waiting request if any
+     *
+     * @param connection The {@link ApnsConnection}
+     */
+    private void release(ApnsConnection connection) {
+        connection.streams.release();
+        dispatchWaiting();
+    }
+
+    /**
+     * Hands free streams over to waiting requests
+     */
+    private void dispatchWaiting() {
+        while (waiting.isEmpty() == false) {
+            ApnsConnection connection = tryAcquire();
+            if (connection == null) {
+                return;
+            }
+            CompletableFuture<ApnsConnection> next = waiting.poll();
+            if (next == null || next.complete(connection) == false) {
+                // No one is waiting anymore or the request already timed out
+                connection.streams.release();
+                if (next == null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of streams currently in use
+     *
+     * @return The number of active streams
+     */
+    private double getActiveStreams() {
+        ApnsConnection[] cons = connections;
+        int result = 0;
+        for (ApnsConnection connection : cons) {
+            result += connection.maxStreams - connection.streams.availablePermits();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    @Override
+    public Transport getTransport() {
+        return Transport.apns;
+    }
+
+    /**
+     * {@link ApnsConnection} - a http/2 connection to the apns gateway with a limited number of concurrent streams
+     */
+    private static class ApnsConnection {
+
+        final HttpClient client;
+        final Semaphore streams;
+        final int maxStreams;
+
+        ApnsConnection(HttpClient client, int maxStreams) {
+            this.client = client;
+            this.maxStreams = maxStreams;
+            this.streams = new Semaphore(maxStreams);
+        }
+    }
+
+}
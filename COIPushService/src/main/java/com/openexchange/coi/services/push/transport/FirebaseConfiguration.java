@@ -85,5 +85,26 @@ public class FirebaseConfiguration {
     @Getter
     @Setter
     private String privateKey = null;
-    
+
+    /**
+     * Enables or disables the batching of push messages. If enabled push messages are collected and sent with a single request to firebase.
+     */
+    @Getter
+    @Setter
+    private boolean batchEnabled = false;
+
+    /**
+     * The maximum number of push messages sent with a single batch request. Firebase allows up to 500 messages per batch.
+     */
+    @Getter
+    @Setter
+    private int batchSize = 500;
+
+    /**
+     * The maximum time in milliseconds a push message waits for further messages before the batch is sent
+     */
+    @Getter
+    @Setter
+    private long batchLinger = 10;
+
 }
@@ -0,0 +1,251 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link FirebaseMessageBatcher} collects firebase messages for a short amount of time and sends them with a single batch request.
+ * <p>
+ * A batch is sent as soon as it contains the maximum number of messages or the linger time of its first message elapsed.
+ * The results of the batch request are handed back to the callers of {@link #submit(Message)}.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class FirebaseMessageBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FirebaseMessageBatcher.class);
+
+    /**
+     * The maximum number of messages firebase accepts within a single batch request
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.transport.firebase.batch";
+    private static final String METRIC_TYPE = "mtype";
+
+    private final FirebaseMessaging messaging;
+    private final int batchSize;
+    private final long linger;
+    private final ScheduledExecutorService scheduler;
+
+    private final DistributionSummary sizeSummary;
+    private final DistributionSummary fillSummary;
+    private final Timer lingerTimer;
+
+    private Batch current;
+
+    /**
+     * Initializes a new {@link FirebaseMessageBatcher}.
+     *
+     * @param messaging The {@link FirebaseMessaging} instance used to send the batches
+     * @param batchSize The maximum number of messages per batch
+     * @param linger The maximum time in milliseconds a message waits for further messages
+     * @param registry The {@link MeterRegistry}
+     */
+    public FirebaseMessageBatcher(FirebaseMessaging messaging, int batchSize, long linger, MeterRegistry registry) {
+        super();
+        this.messaging = messaging;
+        this.batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+        this.linger = Math.max(0, linger);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("firebase-batcher-"));
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+        this.sizeSummary = DistributionSummary.builder(METRIC_NAME).tag(METRIC_TYPE, "size").register(registry);
+        this.fillSummary = DistributionSummary.builder(METRIC_NAME).tag(METRIC_TYPE, "fill").register(registry);
+        this.lingerTimer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "linger").register(registry);
+    }
+
+    /**
+     * Adds the given message to the current batch
+     *
+     * @param message The {@link Message} to send
+     * @return A {@link CompletableFuture} which is completed with the message id or completed exceptionally with the error returned for this message
+     */
+    public CompletableFuture<String> submit(Message message) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        Batch full = null;
+        synchronized (this) {
+            if (current == null) {
+                Batch batch = new Batch();
+                try {
+                    batch.lingerTask = scheduler.schedule(() -> flush(batch), linger, MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                    return result;
+                }
+                current = batch;
+            }
+            current.messages.add(message);
+            current.futures.add(result);
+            if (current.messages.size() >= batchSize) {
+                current.lingerTask.cancel(false);
+                full = current;
+                current = null;
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the given batch in case it is still the current one
+     *
+     * @param batch The batch whose linger time elapsed
+     */
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (current != batch) {
+                // Already sent because it was full
+                return;
+            }
+            current = null;
+        }
+        send(batch);
+    }
+
+    /**
+     * Sends the given batch and hands the results back to the waiting callers
+     *
+     * @param batch The batch to send
+     */
+    private void send(Batch batch) {
+        int size = batch.messages.size();
+        lingerTimer.record(System.nanoTime() - batch.created, NANOSECONDS);
+        sizeSummary.record(size);
+        fillSummary.record((double) size / batchSize);
+        LOG.debug("Sending batch of {} firebase messages", Integer.valueOf(size));
+
+        ApiFuture<BatchResponse> request;
+        try {
+            request = messaging.sendAllAsync(batch.messages);
+        } catch (RuntimeException e) {
+            // E.g. the firebase app has been deleted, the callers would wait forever otherwise
+            batch.futures.forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+        ApiFutures.addCallback(request, new ApiFutureCallback<BatchResponse>() {
+
+            @Override
+            public void onSuccess(BatchResponse response) {
+                List<SendResponse> responses = response.getResponses();
+                for (int i = 0; i < size; i++) {
+                    SendResponse sendResponse = i < responses.size() ? responses.get(i) : null;
+                    CompletableFuture<String> future = batch.futures.get(i);
+                    if (sendResponse == null) {
+                        future.completeExceptionally(new IllegalStateException("Missing response for batched firebase message"));
+                    } else if (sendResponse.isSuccessful()) {
+                        future.complete(sendResponse.getMessageId());
+                    } else {
+                        future.completeExceptionally(sendResponse.getException());
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                batch.futures.forEach(future -> future.completeExceptionally(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Sends all pending messages and stops the batcher
+     */
+    public void shutdown() {
+        Batch remaining;
+        synchronized (this) {
+            remaining = current;
+            current = null;
+        }
+        scheduler.shutdownNow();
+        if (remaining != null) {
+            remaining.lingerTask.cancel(false);
+            send(remaining);
+        }
+    }
+
+    /**
+     * {@link Batch} - the messages of a batch and the futures of their callers
+     */
+    private static class Batch {
+
+        final long created = System.nanoTime();
+        final List<Message> messages = new ArrayList<>();
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+        ScheduledFuture<?> lingerTask;
+    }
+
+}
@@ -54,8 +54,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -65,16 +71,22 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 import com.google.api.client.http.HttpResponseException;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.messaging.AndroidConfig;
 import com.google.firebase.messaging.AndroidConfig.Priority;
 import com.google.firebase.messaging.ApnsConfig;
 import com.google.firebase.messaging.Aps;
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingException;
 import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MulticastMessage;
+import com.google.firebase.messaging.SendResponse;
 import com.openexchange.coi.services.Profiles;
 import com.openexchange.coi.services.exception.CoiServiceException;
 import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
@@ -108,6 +120,21 @@ public class FirebasePushTransport implements PushTransport {
      */
     private static final int MAX_EFFECTIVE_PAYLOAD_SIZE = MAX_PAYLOAD_SIZE - PAYLOAD_OVERHEAD;
 
+    /**
+     * The time in seconds a coi server is asked to wait in case the quota is exceeded and firebase didn't provide a Retry-After value
+     */
+    private static final String DEFAULT_RETRY_AFTER = "60";
+
+    /**
+     * The time in seconds a coi server is asked to wait in case firebase is unavailable and didn't provide a Retry-After value
+     */
+    private static final String DEFAULT_UNAVAILABLE_RETRY_AFTER = "10";
+
+    /**
+     * The maximum number of recipients of a firebase multicast message
+     */
+    private static final int MAX_MULTICAST_TOKENS = 500;
+
     @Autowired
     private FirebaseConfiguration config;
 
@@ -116,6 +143,7 @@ public class FirebasePushTransport implements PushTransport {
 
     private FirebaseApp app = null;
     private Timer timer;
+    private FirebaseMessageBatcher batcher = null;
 
     /**
      * Initializes a new {@link FirebasePushTransport}.
@@ -126,43 +154,237 @@ public class FirebasePushTransport implements PushTransport {
 
     @Override
     public void transport(String token, boolean resourceValidated, byte[] data) throws CoiServiceException {
+        if (batcher != null) {
+            // Wait for the batch containing the message
+            try {
+                transportAsync(token, resourceValidated, data).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof CoiServiceException) {
+                    throw (CoiServiceException) e.getCause();
+                }
+                throw e;
+            }
+            return;
+        }
+        Message message = buildMessage(token, resourceValidated, data);
+        long start = System.currentTimeMillis();
+        try {
+            String response = FirebaseMessaging.getInstance(app).send(message);
+            timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+            LOG.debug("Successfully sent message: " + response);
+        } catch (FirebaseMessagingException e) {
+            handleFirebaseException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+        Message message;
+        try {
+            message = buildMessage(token, resourceValidated, data);
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        sendAsync(message).whenComplete((response, t) -> {
+            if (t == null) {
+                timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+                LOG.debug("Successfully sent message: " + response);
+                result.complete(null);
+                return;
+            }
+            if (t instanceof FirebaseMessagingException) {
+                try {
+                    handleFirebaseException((FirebaseMessagingException) t);
+                } catch (CoiServiceException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                result.complete(null);
+                return;
+            }
+            result.completeExceptionally(t);
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<List<CoiServiceException>> transportMulticast(List<String> tokens, boolean resourceValidated, byte[] data) {
+        String content;
+        try {
+            // Encode the data only once for all recipients
+            content = encode(data);
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        List<CompletableFuture<List<CoiServiceException>>> chunks = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i += MAX_MULTICAST_TOKENS) {
+            List<String> chunk = tokens.subList(i, Math.min(tokens.size(), i + MAX_MULTICAST_TOKENS));
+            chunks.add(sendMulticastAsync(buildMulticastMessage(chunk, resourceValidated, content), chunk.size()));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<CoiServiceException> result = new ArrayList<>(tokens.size());
+            for (CompletableFuture<List<CoiServiceException>> chunk : chunks) {
+                result.addAll(chunk.join());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Sends the given multicast message without blocking the calling thread
+     *
+     * @param message The {@link MulticastMessage}
+     * @param size The number of recipients
+     * @return A {@link CompletableFuture} which is completed with the error or <code>null</code> per recipient
+     */
+    private CompletableFuture<List<CoiServiceException>> sendMulticastAsync(MulticastMessage message, int size) {
+        long start = System.currentTimeMillis();
+        CompletableFuture<List<CoiServiceException>> result = new CompletableFuture<>();
+        ApiFutures.addCallback(FirebaseMessaging.getInstance(app).sendMulticastAsync(message), new ApiFutureCallback<BatchResponse>() {
+
+            @Override
+            public void onSuccess(BatchResponse response) {
+                timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
+                LOG.debug("Sent multicast message to {} of {} recipients", Integer.valueOf(response.getSuccessCount()), Integer.valueOf(size));
+                List<CoiServiceException> errors = new ArrayList<>(size);
+                for (SendResponse r : response.getResponses()) {
+                    errors.add(r.isSuccessful() ? null : toCoiServiceException(r.getException()));
+                }
+                result.complete(errors);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof FirebaseMessagingException) {
+                    // The whole multicast message failed
+                    CoiServiceException e = toCoiServiceException((FirebaseMessagingException) t);
+                    result.complete(Collections.nCopies(size, e));
+                    return;
+                }
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Converts the given {@link FirebaseMessagingException}
+     *
+     * @param e The {@link FirebaseMessagingException}
+     * @return The {@link CoiServiceException} or <code>null</code> in case the error can be ignored
+     */
+    private CoiServiceException toCoiServiceException(FirebaseMessagingException e) {
+        try {
+            handleFirebaseException(e);
+            return null;
+        } catch (CoiServiceException ex) {
+            return ex;
+        }
+    }
+
+    /**
+     * Sends the given message without blocking the calling thread. The message is added to the current batch in case batching is enabled.
+     *
+     * @param message The {@link Message} to send
+     * @return A {@link CompletableFuture} which is completed with the message id returned by firebase
+     */
+    private CompletableFuture<String> sendAsync(Message message) {
+        if (batcher != null) {
+            return batcher.submit(message);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        ApiFutures.addCallback(FirebaseMessaging.getInstance(app).sendAsync(message), new ApiFutureCallback<String>() {
+
+            @Override
+            public void onSuccess(String response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * Builds the firebase {@link Message} for the given data
+     *
+     * @param token The client push token
+     * @param resourceValidated Indicates if the resource, which should get the notification data, is already validated by a push round trip
+     * @param data The data to transport
+     * @return The {@link Message}
+     * @throws CoiServiceException in case the firebase app is not available or the data is too large
+     */
+    private Message buildMessage(String token, boolean resourceValidated, byte[] data) throws CoiServiceException {
+        // @formatter:off
+        return Message.builder()
+                      .putData("content", encode(data))
+                      .setToken(token)
+                      .setAndroidConfig(buildAndroidConfig())
+                      .setApnsConfig(buildApnsConfig(resourceValidated))
+                      .build();
+        // @formatter:on
+    }
+
+    /**
+     * Builds the firebase {@link MulticastMessage} for the given data
+     *
+     * @param tokens The client push tokens
+     * @param resourceValidated Indicates if the resources, which should get the notification data, are already validated by a push round trip
+     * @param content The already encoded data to transport
+     * @return The {@link MulticastMessage}
+     */
+    private MulticastMessage buildMulticastMessage(List<String> tokens, boolean resourceValidated, String content) {
+        // @formatter:off
+        return MulticastMessage.builder()
+                               .putData("content", content)
+                               .addAllTokens(tokens)
+                               .setAndroidConfig(buildAndroidConfig())
+                               .setApnsConfig(buildApnsConfig(resourceValidated))
+                               .build();
+        // @formatter:on
+    }
+
+    /**
+     * Base64 encodes the given data
+     *
+     * @param data The data to transport
+     * @return The encoded data
+     * @throws CoiServiceException in case the firebase app is not available or the data is too large
+     */
+    private String encode(byte[] data) throws CoiServiceException {
         if (app == null) {
             LOG.error("Firebase app not available. Probably a configuration issue. Fix the configuration and restart the server!");
             throw CoiServiceExceptionCodes.INVALID_CONFIGURATION.create();
         }
-        long start = System.currentTimeMillis();
 
         byte[] base64data = Base64.getEncoder().encode(data);
         if (base64data.length > MAX_EFFECTIVE_PAYLOAD_SIZE) {
             throw CoiServiceExceptionCodes.MAX_PUSH_SIZE_EXCEEDED.create(MAX_EFFECTIVE_PAYLOAD_SIZE);
         }
+        return new String(base64data, StandardCharsets.UTF_8);
+    }
+
+    private AndroidConfig buildAndroidConfig() {
+        return AndroidConfig.builder().setPriority(Priority.HIGH).build();
+    }
 
+    private ApnsConfig buildApnsConfig(boolean resourceValidated) {
         // @formatter:off
-        Message message = Message.builder()
-                                 .putData("content", new String(base64data, StandardCharsets.UTF_8))
-                                 .setToken(token)
-                                 .setAndroidConfig(AndroidConfig.builder()
-                                                                .setPriority(Priority.HIGH)
-                                                                .build())
-                                 .setApnsConfig(ApnsConfig.builder()
-                                                          .setAps(Aps.builder()
-                                                                     .setSound("default")
-                                                                     .setMutableContent(true)
-                                                                      //The first (un-validated) push message should be a "Background Update Notification": therefore setting the contenAvailable flag
-                                                                     .setContentAvailable(!resourceValidated)
-                                                                     .build())
-                                                          .putHeader("apns-priority", String.valueOf(10))
-                                                          .build())
-                                 .build();
+        return ApnsConfig.builder()
+                         .setAps(Aps.builder()
+                                    .setSound("default")
+                                    .setMutableContent(true)
+                                     //The first (un-validated) push message should be a "Background Update Notification": therefore setting the contenAvailable flag
+                                    .setContentAvailable(!resourceValidated)
+                                    .build())
+                         .putHeader("apns-priority", String.valueOf(10))
+                         .build();
         // @formatter:on
-
-        try {
-            String response = FirebaseMessaging.getInstance(app).send(message);
-            timer.record(Duration.ofMillis(System.currentTimeMillis() - start));
-            LOG.debug("Successfully sent message: " + response);
-        } catch (FirebaseMessagingException e) {
-            handleFirebaseException(e);
-        }
     }
 
     /**
@@ -183,14 +405,38 @@ public class FirebasePushTransport implements PushTransport {
                 // Quota exceeded
                 LOG.error("Firebase quota reached. Currenlty unable to send push messages. Please increase the puhs quota.");
                 String retryAfter = ex.getHeaders().getRetryAfter();
-                throw CoiServiceExceptionCodes.QUOTA_EXCEEDED.create(retryAfter);
+                throw CoiServiceExceptionCodes.QUOTA_EXCEEDED.create(retryAfter == null ? DEFAULT_RETRY_AFTER : retryAfter);
             }
             if (statusCode == 401) {
                 // APNS error
                 return;
             }
-
-            // Other errors like internal server errors
+            if (statusCode >= 500) {
+                // Internal server errors or firebase is temporarily unavailable
+                String retryAfter = ex.getHeaders().getRetryAfter();
+                throw CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create(Transport.firebase.name(), retryAfter == null ? DEFAULT_UNAVAILABLE_RETRY_AFTER : retryAfter);
+            }
+            return;
+        }
+        // Errors of batched messages don't contain the http response. Use the error code instead.
+        String errorCode = e.getErrorCode();
+        if (errorCode == null) {
+            return;
+        }
+        switch (errorCode) {
+            case "registration-token-not-registered":
+            case "invalid-argument":
+            case "mismatched-credential":
+                throw CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create();
+            case "message-rate-exceeded":
+                LOG.error("Firebase quota reached. Currenlty unable to send push messages. Please increase the puhs quota.");
+                throw CoiServiceExceptionCodes.QUOTA_EXCEEDED.create(DEFAULT_RETRY_AFTER);
+            case "internal-error":
+            case "server-unavailable":
+                throw CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create(Transport.firebase.name(), DEFAULT_UNAVAILABLE_RETRY_AFTER);
+            default:
+                // Other errors like APNS errors
+                return;
         }
     }
 
@@ -222,6 +468,20 @@ public class FirebasePushTransport implements PushTransport {
             // Should already be initialized
             app = FirebaseApp.getInstance();
         }
+        if (app != null && config.isBatchEnabled()) {
+            LOG.info("Batching of firebase messages is enabled with a batch size of {} and a linger time of {} ms", Integer.valueOf(config.getBatchSize()), Long.valueOf(config.getBatchLinger()));
+            batcher = new FirebaseMessageBatcher(FirebaseMessaging.getInstance(app), config.getBatchSize(), config.getBatchLinger(), registry);
+        }
+    }
+
+    /**
+     * Sends all pending batched messages
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
     }
 
     @Override
@@ -244,6 +504,9 @@ public class FirebasePushTransport implements PushTransport {
     @Profile(Profiles.PUSH + " & " + Profiles.HEALTH)
     public class FirebaseHealth extends AbstractHealthIndicator {
 
+        @Autowired
+        private PushTransportRegistry transportRegistry;
+
         @Override
         protected void doHealthCheck(Builder builder) throws Exception {
             if (config.isEnabled() == false) {
@@ -255,6 +518,14 @@ public class FirebasePushTransport implements PushTransport {
                 return;
             }
             builder.up();
+            transportRegistry.getGuardedTransport(Transport.firebase).ifPresent(guarded -> {
+                // @formatter:off
+                builder.withDetail("limit", Integer.valueOf(guarded.getLimiter().getLimit()))
+                       .withDetail("inFlight", Integer.valueOf(guarded.getLimiter().getInFlight()))
+                       .withDetail("rejections", Long.valueOf(guarded.getRejections()))
+                       .withDetail("breaker", guarded.getBreaker().getState());
+                // @formatter:on
+            });
         }
     }
 
@@ -49,7 +49,12 @@
 
 package com.openexchange.coi.services.push.transport;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
 
 /**
  * {@link PushTransport} defines methods which must be implemented by a push transport.
@@ -69,6 +74,58 @@ public interface PushTransport {
      */
     public void transport(String token, boolean resourceValidated, byte[] data) throws CoiServiceException;
 
+    /**
+     * Transports the given data to the recipient without blocking the calling thread.
+     * <p>
+     * The default implementation simply delegates to {@link #transport(String, boolean, byte[])} and therefore still blocks.
+     * Transports which are able to send messages asynchronously should override this method.
+     *
+     * @param token The client push token
+     * @param resourceValidated Indicates if the resource, which should get the notification data, is already validated by a push round trip
+     * @param data The data to transport
+     * @return A {@link CompletableFuture} which is completed once the data is transported or completed exceptionally with a {@link CoiServiceException} in case of errors
+     */
+    public default CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+        try {
+            transport(token, resourceValidated, data);
+            return CompletableFuture.completedFuture(null);
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Transports the same data to many recipients without blocking the calling thread.
+     * <p>
+     * The default implementation simply sends the data to each recipient on its own via {@link #transportAsync(String, boolean, byte[])}.
+     * Transports which support multicast messages should override this method.
+     *
+     * @param tokens The client push tokens
+     * @param resourceValidated Indicates if the resources, which should get the notification data, are already validated by a push round trip
+     * @param data The data to transport
+     * @return A {@link CompletableFuture} which is completed with a list containing the error or <code>null</code> for each token in the order of the
+     *         given tokens. It is completed exceptionally with a {@link CoiServiceException} in case the data couldn't be sent at all.
+     */
+    public default CompletableFuture<List<CoiServiceException>> transportMulticast(List<String> tokens, boolean resourceValidated, byte[] data) {
+        List<CompletableFuture<CoiServiceException>> futures = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            futures.add(transportAsync(token, resourceValidated, data).handle((v, t) -> {
+                if (t == null) {
+                    return null;
+                }
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                return cause instanceof CoiServiceException ? (CoiServiceException) cause : CoiServiceExceptionCodes.UNEXPECTED_ERROR.create(cause.getMessage());
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<CoiServiceException> result = new ArrayList<>(futures.size());
+            for (CompletableFuture<CoiServiceException> future : futures) {
+                result.add(future.join());
+            }
+            return result;
+        });
+    }
+
     /**
      * Whether a transport is enabled or not
      *
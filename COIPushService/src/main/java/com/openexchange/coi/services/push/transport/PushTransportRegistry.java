@@ -59,6 +59,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import com.openexchange.coi.services.Profiles;
+import com.openexchange.coi.services.push.transport.limit.GuardedPushTransport;
+import com.openexchange.coi.services.push.transport.limit.TransportLimitConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * {@link PushTransportRegistry} is a registry for push transport implementations
@@ -76,11 +79,13 @@ public class PushTransportRegistry {
 
     /**
      * Initializes a new {@link PushTransportRegistry} and registers the transport implementations.
+     * <p>
+     * The transports are protected by a concurrency limiter and a circuit breaker if configured.
      */
     @Autowired
-    public PushTransportRegistry(List<PushTransport> transports) {
+    public PushTransportRegistry(List<PushTransport> transports, TransportLimitConfiguration limitConfig, MeterRegistry meterRegistry) {
         super();
-        transports.forEach((t) -> REGISTRY.put(t.getTransport().name(), t));
+        transports.forEach((t) -> REGISTRY.put(t.getTransport().name(), limitConfig.isEnabled() ? new GuardedPushTransport(t, limitConfig, meterRegistry) : t));
         LOG.debug("Added the following transport implementation to the push transport registry: {}", REGISTRY.keySet().stream().collect(Collectors.joining(",")));
     }
 
@@ -94,5 +99,16 @@ public class PushTransportRegistry {
         return Optional.ofNullable(REGISTRY.get(name));
     }
 
+    /**
+     * Gets an optional of the {@link GuardedPushTransport} of the given transport
+     *
+     * @param transport The {@link Transport}
+     * @return An {@link Optional} containing the {@link GuardedPushTransport} if the transport exists and is guarded
+     */
+    public Optional<GuardedPushTransport> getGuardedTransport(Transport transport) {
+        PushTransport result = REGISTRY.get(transport.name());
+        return result instanceof GuardedPushTransport ? Optional.of((GuardedPushTransport) result) : Optional.empty();
+    }
+
 }
 
@@ -50,6 +50,8 @@
 package com.openexchange.coi.services.push.transport;
 
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Profile;
@@ -82,6 +84,14 @@ public class TestPushTransport implements PushTransport {
         LOG.debug("Send message to token {} with {} bytes of data. ResourceValidated: {}", token, data == null ? 0 : data.length, resourceValidated);
     }
 
+    @Override
+    public CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+        // Delay the completion by the average time it takes to send a push message to firebase without blocking the current thread
+        return CompletableFuture.runAsync(() -> {
+            LOG.debug("Send message to token {} with {} bytes of data. ResourceValidated: {}", token, data == null ? 0 : data.length, resourceValidated);
+        }, CompletableFuture.delayedExecutor(RAND.nextInt(100) + 100, TimeUnit.MILLISECONDS));
+    }
+
     @Override
     public boolean isEnabled() {
         return true;
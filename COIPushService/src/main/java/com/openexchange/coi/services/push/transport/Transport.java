@@ -61,6 +61,10 @@ public enum Transport {
      * Transport based on google firebase cloud messaging
      */
     firebase,
+    /**
+     * Transport based on the apple push notification service
+     */
+    apns,
     /**
      * A transport only used for testing purposes
      */
@@ -0,0 +1,227 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport.limit;
+
+import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.Clock;
+
+/**
+ * {@link CircuitBreaker} stops sending push messages to a transport which is unavailable or whose quota is exceeded.
+ * <p>
+ * The breaker opens after a number of consecutive failures or immediately in case the quota of the transport is exceeded. While it is open all push
+ * messages are rejected. Afterwards a single trial push message is let through. Depending on its outcome the breaker either closes or opens again.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class CircuitBreaker {
+
+    /** The permit returned by {@link #tryAcquire()} in case the push message must be rejected */
+    public static final long NO_PERMIT = -1;
+
+    /**
+     * {@link State} - the states of a {@link CircuitBreaker}
+     */
+    public enum State {
+        /**
+         * Push messages are sent
+         */
+        CLOSED,
+        /**
+         * A single trial push message is sent
+         */
+        HALF_OPEN,
+        /**
+         * Push messages are rejected
+         */
+        OPEN;
+    }
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openUntil = 0;
+    private boolean openedByQuota = false;
+    private boolean trialInFlight = false;
+    private long generation = 0;
+
+    /**
+     * Initializes a new {@link CircuitBreaker}.
+     *
+     * @param config The {@link TransportLimitConfiguration}
+     */
+    public CircuitBreaker(TransportLimitConfiguration config) {
+        this(config, Clock.SYSTEM);
+    }
+
+    /**
+     * Initializes a new {@link CircuitBreaker}.
+     *
+     * @param config The {@link TransportLimitConfiguration}
+     * @param clock The {@link Clock} used to determine when the breaker lets a trial push message through
+     */
+    public CircuitBreaker(TransportLimitConfiguration config, Clock clock) {
+        super();
+        this.failureThreshold = Math.max(1, config.getFailureThreshold());
+        this.openDuration = TimeUnit.SECONDS.toMillis(Math.max(1, config.getOpenDuration()));
+        this.clock = clock;
+    }
+
+    /**
+     * Tries to acquire a permit for a push message
+     * <p>
+     * The permit identifies the generation of the breaker the push message has been sent in. The outcome of a push message is only recorded if the
+     * breaker hasn't changed its state in the meantime, so that e.g. a push message sent before the breaker opened can't close it again.
+     *
+     * @return The permit or {@link #NO_PERMIT} if the push message must be rejected
+     */
+    public synchronized long tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return generation;
+            case OPEN:
+                if (clock.wallTime() < openUntil) {
+                    return NO_PERMIT;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return generation;
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) {
+                    return NO_PERMIT;
+                }
+                trialInFlight = true;
+                return generation;
+        }
+    }
+
+    /**
+     * Records a successful push message
+     *
+     * @param permit The permit acquired for the push message
+     */
+    public synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            // Sent before the breaker changed its state
+            return;
+        }
+        failures = 0;
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * Records a failed push message
+     *
+     * @param permit The permit acquired for the push message
+     * @param retryAfter The time in seconds the transport asked to wait before retrying or <code>-1</code> if unknown
+     * @param quota <code>true</code> if the failure was caused by an exceeded quota
+     */
+    public synchronized void onFailure(long permit, long retryAfter, boolean quota) {
+        if (permit != generation) {
+            // Sent before the breaker changed its state
+            return;
+        }
+        trialInFlight = false;
+        failures++;
+        // An exceeded quota opens the breaker immediately
+        if (quota || state == State.HALF_OPEN || failures >= failureThreshold) {
+            transition(State.OPEN);
+            openedByQuota = quota;
+            openUntil = clock.wallTime() + (retryAfter > 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : openDuration);
+        }
+    }
+
+    /**
+     * Changes the state and starts a new generation
+     *
+     * @param newState The new {@link State}
+     */
+    private void transition(State newState) {
+        state = newState;
+        failures = 0;
+        generation++;
+    }
+
+    /**
+     * Gets the current {@link State}
+     *
+     * @return The {@link State}
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Whether the breaker has been opened because of an exceeded quota
+     *
+     * @return <code>true</code> if the breaker has been opened because of an exceeded quota, <code>false</code> otherwise
+     */
+    public synchronized boolean isOpenedByQuota() {
+        return openedByQuota;
+    }
+
+    /**
+     * Gets the time in seconds until the breaker lets a trial push message through
+     *
+     * @return The time in seconds, at least 1
+     */
+    public synchronized long getRetryAfter() {
+        long remaining = openUntil - clock.wallTime();
+        return Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remaining + 999));
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport.limit;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.transport.PushTransport;
+import com.openexchange.coi.services.push.transport.Transport;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link GuardedPushTransport} - a {@link PushTransport} which protects another transport with an {@link AdaptiveConcurrencyLimiter} and a
+ * {@link CircuitBreaker}. Push messages which exceed the limit or arrive while the breaker is open are rejected immediately instead of piling up.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class GuardedPushTransport implements PushTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GuardedPushTransport.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.push.transport.limit";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TRANSPORT = "transport";
+    private static final String TYPE = "type";
+
+    private final PushTransport delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final CircuitBreaker breaker;
+    private final Clock clock;
+
+    private final Counter limitRejections;
+    private final Counter breakerRejections;
+
+    /**
+     * Initializes a new {@link GuardedPushTransport}.
+     *
+     * @param delegate The {@link PushTransport} to protect
+     * @param config The {@link TransportLimitConfiguration}
+     * @param registry The {@link MeterRegistry}, whose {@link Clock} is used to measure the transport time and the open duration of the breaker
+     */
+    public GuardedPushTransport(PushTransport delegate, TransportLimitConfiguration config, MeterRegistry registry) {
+        super();
+        this.delegate = delegate;
+        this.limiter = new AdaptiveConcurrencyLimiter(config);
+        this.clock = registry.config().clock();
+        this.breaker = new CircuitBreaker(config, clock);
+
+        String name = delegate.getTransport().name();
+        Gauge.builder(METRIC_NAME, limiter, AdaptiveConcurrencyLimiter::getLimit).tag(METRIC_TYPE, "limit").tag(TRANSPORT, name).register(registry);
+        Gauge.builder(METRIC_NAME, limiter, AdaptiveConcurrencyLimiter::getInFlight).tag(METRIC_TYPE, "inflight").tag(TRANSPORT, name).register(registry);
+        Gauge.builder(METRIC_NAME, breaker, b -> b.getState().ordinal()).tag(METRIC_TYPE, "breaker").tag(TRANSPORT, name).register(registry);
+        limitRejections = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "rejected").tag(TRANSPORT, name).tag(TYPE, "limit").register(registry);
+        breakerRejections = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "rejected").tag(TRANSPORT, name).tag(TYPE, "breaker").register(registry);
+    }
+
+    @Override
+    public void transport(String token, boolean resourceValidated, byte[] data) throws CoiServiceException {
+        long permit = acquire();
+        long start = clock.monotonicTime();
+        Throwable error = null;
+        try {
+            delegate.transport(token, resourceValidated, data);
+        } catch (CoiServiceException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            release(permit, clock.monotonicTime() - start, error);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+        long permit;
+        try {
+            permit = acquire();
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = clock.monotonicTime();
+        CompletableFuture<Void> result;
+        try {
+            result = delegate.transportAsync(token, resourceValidated, data);
+        } catch (RuntimeException e) {
+            release(permit, clock.monotonicTime() - start, e);
+            throw e;
+        }
+        return result.whenComplete((v, t) -> release(permit, clock.monotonicTime() - start, t));
+    }
+
+    @Override
+    public CompletableFuture<List<CoiServiceException>> transportMulticast(List<String> tokens, boolean resourceValidated, byte[] data) {
+        // A multicast message is a single request to the transport
+        long permit;
+        try {
+            permit = acquire();
+        } catch (CoiServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = clock.monotonicTime();
+        CompletableFuture<List<CoiServiceException>> result;
+        try {
+            result = delegate.transportMulticast(tokens, resourceValidated, data);
+        } catch (RuntimeException e) {
+            release(permit, clock.monotonicTime() - start, e);
+            throw e;
+        }
+        return result.whenComplete((errors, t) -> release(permit, clock.monotonicTime() - start, t != null ? t : getTransportError(errors)));
+    }
+
+    /**
+     * Gets the first error of a multicast message which is caused by the transport rather than by the push message
+     *
+     * @param errors The errors per recipient
+     * @return The error or <code>null</code>
+     */
+    private Throwable getTransportError(List<CoiServiceException> errors) {
+        for (CoiServiceException e : errors) {
+            if (e != null && isClientError(e) == false) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Acquires a permit of the limiter and the breaker
+     *
+     * @return The permit of the breaker
+     * @throws CoiServiceException {@link CoiServiceExceptionCodes#TRANSPORT_OVERLOADED} or {@link CoiServiceExceptionCodes#QUOTA_EXCEEDED} in case
+     *             the push message must be rejected
+     */
+    private long acquire() throws CoiServiceException {
+        if (limiter.tryAcquire() == false) {
+            limitRejections.increment();
+            throw CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.create(getTransport().name(), Integer.valueOf(1));
+        }
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.NO_PERMIT) {
+            limiter.cancel();
+            breakerRejections.increment();
+            Long retryAfter = Long.valueOf(breaker.getRetryAfter());
+            if (breaker.isOpenedByQuota()) {
+                throw CoiServiceExceptionCodes.QUOTA_EXCEEDED.create(retryAfter);
+            }
+            throw CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.create(getTransport().name(), retryAfter);
+        }
+        return permit;
+    }
+
+    /**
+     * Releases the permits and records the outcome of a push message
+     *
+     * @param permit The permit of the breaker
+     * @param latency The time in nanoseconds it took to send the push message
+     * @param error The error or <code>null</code> if the push message has been sent
+     */
+    private void release(long permit, long latency, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause == null || isClientError(cause)) {
+            // The transport itself works fine
+            limiter.release(latency, false);
+            breaker.onSuccess(permit);
+            return;
+        }
+        CoiServiceException e = cause instanceof CoiServiceException ? (CoiServiceException) cause : null;
+        boolean quota = e != null && CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(e);
+        boolean overloaded = quota || (e != null && CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(e));
+        limiter.release(latency, overloaded);
+        breaker.onFailure(permit, getRetryAfter(e, quota), quota);
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            LOG.debug("Circuit breaker of transport {} is open for {} seconds", getTransport().name(), Long.valueOf(breaker.getRetryAfter()));
+        }
+    }
+
+    /**
+     * Whether the given error is caused by the push message itself rather than by the transport
+     *
+     * @param error The error
+     * @return <code>true</code> if the error is caused by the push message, <code>false</code> otherwise
+     */
+    private boolean isClientError(Throwable error) {
+        if (error instanceof CoiServiceException == false) {
+            return false;
+        }
+        CoiServiceException e = (CoiServiceException) error;
+        return CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(e) == false && CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(e) == false && CoiServiceExceptionCodes.UNEXPECTED_ERROR.equals(e) == false;
+    }
+
+    /**
+     * Gets the Retry-After value of the given error
+     *
+     * @param e The {@link CoiServiceException} or <code>null</code>
+     * @param quota Whether the error is a {@link CoiServiceExceptionCodes#QUOTA_EXCEEDED} error
+     * @return The time in seconds or <code>-1</code> if unknown
+     */
+    private long getRetryAfter(CoiServiceException e, boolean quota) {
+        if (e == null) {
+            return -1;
+        }
+        int index = quota ? 0 : 1;
+        if (e.getArgs().size() <= index || e.getArgs().get(index) == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(e.getArgs().get(index).toString().trim());
+        } catch (NumberFormatException ex) {
+            // E.g. a http date
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the {@link AdaptiveConcurrencyLimiter} of this transport
+     *
+     * @return The {@link AdaptiveConcurrencyLimiter}
+     */
+    public AdaptiveConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Gets the {@link CircuitBreaker} of this transport
+     *
+     * @return The {@link CircuitBreaker}
+     */
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    /**
+     * Gets the number of rejected push messages
+     *
+     * @return The number of rejected push messages
+     */
+    public long getRejections() {
+        return (long) (limitRejections.count() + breakerRejections.count());
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    @Override
+    public Transport getTransport() {
+        return delegate.getTransport();
+    }
+
+}
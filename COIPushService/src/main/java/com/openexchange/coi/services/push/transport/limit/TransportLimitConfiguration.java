@@ -0,0 +1,126 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.push.transport.limit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import com.openexchange.coi.services.Profiles;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@link TransportLimitConfiguration} provides the configuration for the concurrency limiter and circuit breaker of the push transports
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Configuration
+@ConfigurationProperties(prefix = "com.openexchange.coi.services.push.limit")
+@Profile(Profiles.PUSH)
+public class TransportLimitConfiguration {
+
+    /**
+     * Enables or disables the concurrency limiter and circuit breaker of the push transports
+     */
+    @Getter
+    @Setter
+    private boolean enabled = true;
+
+    /**
+     * The initial number of concurrent push messages per transport
+     */
+    @Getter
+    @Setter
+    private int initialLimit = 50;
+
+    /**
+     * The minimum number of concurrent push messages per transport
+     */
+    @Getter
+    @Setter
+    private int minLimit = 5;
+
+    /**
+     * The maximum number of concurrent push messages per transport
+     */
+    @Getter
+    @Setter
+    private int maxLimit = 500;
+
+    /**
+     * The factor the limit is reduced by in case the transport is overloaded
+     */
+    @Getter
+    @Setter
+    private double backoffRatio = 0.9;
+
+    /**
+     * The transport time in milliseconds above which the transport is considered to be overloaded
+     */
+    @Getter
+    @Setter
+    private long latencyThreshold = 2000;
+
+    /**
+     * The number of consecutive failures after which the circuit breaker opens
+     */
+    @Getter
+    @Setter
+    private int failureThreshold = 5;
+
+    /**
+     * The time in seconds the circuit breaker stays open in case the transport didn't provide a Retry-After value
+     */
+    @Getter
+    @Setter
+    private int openDuration = 10;
+
+}
@@ -53,6 +53,7 @@ import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.logging.log4j.util.Strings;
@@ -87,6 +88,10 @@ public class RateLimitInterceptor extends HandlerInterceptorAdapter {
         if (config == null || !config.isEnabled()) {
             return true;
         }
+        if (DispatcherType.ASYNC.equals(request.getDispatcherType())) {
+            // The request has already been checked by the initial dispatch
+            return true;
+        }
 
         String clientIp = getClientIP(request);
         Optional<LocalBucket> rateLimiter = getRateLimiter(clientIp);
@@ -0,0 +1,159 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.util.caching;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * {@link CacheStatisticsEndpoint} is an actuator endpoint which shows the statistics and the current policy of the caches provided by the
+ * {@link CacheProvider}s and allows to clear them.
+ *
+ * <pre>
+ * GET    /actuator/cachestats
+ * GET    /actuator/cachestats/{name}
+ * DELETE /actuator/cachestats/{name}
+ * </pre>
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+@Endpoint(id = "cachestats")
+public class CacheStatisticsEndpoint {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Gets the statistics of all caches
+     *
+     * @return The statistics per cache name
+     */
+    @ReadOperation
+    public Map<String, Map<String, Object>> caches() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Map<String, Object> stats = cache(name);
+            if (stats != null) {
+                result.put(name, stats);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the statistics of a single cache
+     *
+     * @param name The name of the cache
+     * @return The statistics or <code>null</code> if no such cache exists
+     */
+    @ReadOperation
+    public Map<String, Object> cache(@Selector String name) {
+        Cache<?, ?> cache = getNativeCache(name);
+        if (cache == null) {
+            return null;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", Long.valueOf(cache.estimatedSize()));
+        Policy<?, ?> policy = cache.policy();
+        policy.eviction().ifPresent(e -> result.put("max", Long.valueOf(e.getMaximum())));
+        policy.expireAfterWrite().ifPresent(e -> result.put("expireAfterWrite", Long.valueOf(e.getExpiresAfter(TimeUnit.SECONDS))));
+        policy.expireAfterAccess().ifPresent(e -> result.put("expireAfterAccess", Long.valueOf(e.getExpiresAfter(TimeUnit.SECONDS))));
+        policy.refreshAfterWrite().ifPresent(e -> result.put("refreshAfterWrite", Long.valueOf(e.getExpiresAfter(TimeUnit.SECONDS))));
+        if (policy.isRecordingStats()) {
+            CacheStats stats = cache.stats();
+            result.put("hits", Long.valueOf(stats.hitCount()));
+            result.put("misses", Long.valueOf(stats.missCount()));
+            result.put("hitRate", Double.valueOf(stats.hitRate()));
+            result.put("loads", Long.valueOf(stats.loadCount()));
+            result.put("loadFailures", Long.valueOf(stats.loadFailureCount()));
+            result.put("averageLoadPenalty", Double.valueOf(stats.averageLoadPenalty()));
+            result.put("evictions", Long.valueOf(stats.evictionCount()));
+        }
+        return result;
+    }
+
+    /**
+     * Removes all entries of a cache
+     *
+     * @param name The name of the cache
+     * @return <code>true</code> if the cache has been cleared, <code>false</code> if no such cache exists
+     */
+    @DeleteOperation
+    public boolean clear(@Selector String name) {
+        org.springframework.cache.Cache cache = cacheManager.getCache(name);
+        if (cache == null) {
+            return false;
+        }
+        cache.clear();
+        return true;
+    }
+
+    private Cache<?, ?> getNativeCache(String name) {
+        org.springframework.cache.Cache cache = cacheManager.getCache(name);
+        if (cache == null || cache.getNativeCache() instanceof Cache == false) {
+            return null;
+        }
+        return (Cache<?, ?>) cache.getNativeCache();
+    }
+
+}
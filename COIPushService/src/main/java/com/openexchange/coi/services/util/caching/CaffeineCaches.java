@@ -0,0 +1,113 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.util.caching;
+
+import java.util.concurrent.TimeUnit;
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * {@link CaffeineCaches} contains helper methods to adjust the policy of an existing Caffeine {@link Cache}, e.g. once the configuration is
+ * re-bound at runtime. In contrast to re-creating the cache the cached entries are kept.
+ * <p>
+ * Adjusting a policy the cache hasn't been built with is ignored.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public final class CaffeineCaches {
+
+    private CaffeineCaches() {
+        super();
+    }
+
+    /**
+     * Sets the maximum number of entries. Exceeding entries are evicted.
+     *
+     * @param cache The {@link Cache}
+     * @param max The maximum number of entries
+     */
+    public static void setMaximumSize(Cache<?, ?> cache, long max) {
+        cache.policy().eviction().ifPresent(e -> e.setMaximum(max));
+    }
+
+    /**
+     * Sets the duration after which entries expire once they have been written
+     *
+     * @param cache The {@link Cache}
+     * @param duration The duration
+     * @param unit The {@link TimeUnit} of the duration
+     */
+    public static void setExpireAfterWrite(Cache<?, ?> cache, long duration, TimeUnit unit) {
+        cache.policy().expireAfterWrite().ifPresent(e -> e.setExpiresAfter(duration, unit));
+    }
+
+    /**
+     * Sets the duration after which entries expire once they have been accessed
+     *
+     * @param cache The {@link Cache}
+     * @param duration The duration
+     * @param unit The {@link TimeUnit} of the duration
+     */
+    public static void setExpireAfterAccess(Cache<?, ?> cache, long duration, TimeUnit unit) {
+        cache.policy().expireAfterAccess().ifPresent(e -> e.setExpiresAfter(duration, unit));
+    }
+
+    /**
+     * Sets the duration after which entries are reloaded on their next access once they have been written
+     *
+     * @param cache The {@link Cache}
+     * @param duration The duration
+     * @param unit The {@link TimeUnit} of the duration
+     */
+    public static void setRefreshAfterWrite(Cache<?, ?> cache, long duration, TimeUnit unit) {
+        cache.policy().refreshAfterWrite().ifPresent(e -> e.setExpiresAfter(duration, unit));
+    }
+
+}
@@ -52,6 +52,7 @@ package com.openexchange.coi.services.util.mapper.mapping;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Arrays;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 import com.openexchange.coi.services.exception.CoiServiceException;
@@ -84,6 +85,12 @@ public class BinaryMapping<O> extends DefaultDbMapping<byte[], O> {
         this.setConsumer = setConsumer;
     }
 
+    @Override
+    public boolean equals(O object1, O object2) {
+        // Arrays don't implement equals
+        return Arrays.equals(get(object1), get(object2));
+    }
+
     @Override
     public byte[] get(ResultSet resultSet, String columnLabel) throws SQLException {
         return resultSet.getBytes(columnLabel);
@@ -0,0 +1,117 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.util.purge;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * {@link ExpiryBuckets} contains helper methods for tables which are range-partitioned by the expiry of their entries.
+ * <p>
+ * Such a table contains an additional {@link #COLUMN} holding the hour since the epoch in which the entry expires and is partitioned by it. The
+ * column is maintained by the storage on every write, so that an entry is moved to another partition once its expiry is changed. Entries without
+ * an expiry are stored with {@link #NO_EXPIRY} and therefore always stay in the last partition.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public final class ExpiryBuckets {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpiryBuckets.class);
+
+    /**
+     * The name of the column holding the expiry bucket
+     */
+    public static final String COLUMN = "expirebucket";
+
+    /**
+     * The bucket of entries without an expiry
+     */
+    public static final int NO_EXPIRY = Integer.MAX_VALUE;
+
+    private static final String PARTITIONS = "SELECT COUNT(*) FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=? AND PARTITION_NAME IS NOT NULL;";
+
+    private ExpiryBuckets() {
+        super();
+    }
+
+    /**
+     * Gets the bucket of the given expiry
+     *
+     * @param expiry The expiry or <code>null</code>
+     * @return The bucket
+     */
+    public static int of(Date expiry) {
+        return expiry == null ? NO_EXPIRY : (int) TimeUnit.MILLISECONDS.toHours(expiry.getTime());
+    }
+
+    /**
+     * Checks whether the given table is partitioned
+     *
+     * @param template The {@link JdbcTemplate}
+     * @param table The name of the table
+     * @return <code>true</code> if the table is partitioned, <code>false</code> otherwise
+     */
+    public static boolean isPartitioned(JdbcTemplate template, String table) {
+        try {
+            Integer count = template.queryForObject(PARTITIONS, Integer.class, table);
+            return count != null && count.intValue() > 0;
+        } catch (BadSqlGrammarException e) {
+            // Databases without partitioning support, e.g. the embedded database of the benchmarks
+            LOG.debug("Unable to determine the partitions of table {}. Assuming it isn't partitioned.", table, e);
+            return false;
+        }
+    }
+
+}
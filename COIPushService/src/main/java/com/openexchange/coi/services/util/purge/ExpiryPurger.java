@@ -0,0 +1,206 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.util.purge;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link ExpiryPurger} deletes the expired entries of an {@link ExpiringStorage} in bounded batches.
+ * <p>
+ * Each batch is a short statement of its own instead of a single statement deleting all expired entries at once, so that locks are only held
+ * briefly. The batches are paced to not exceed the configured number of deleted entries per second.
+ * <p>
+ * Since a paced purge might take a long time, cleanups are executed by a thread of their own via {@link #execute(String, Runnable)}, so that they
+ * don't block the thread running the other scheduled tasks.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+public class ExpiryPurger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpiryPurger.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.purge";
+    private static final String METRIC_TYPE = "mtype";
+    private static final String TYPE = "type";
+    private static final String TABLE = "table";
+
+    private final PurgeConfiguration config;
+    private final MeterRegistry registry;
+    private final ExecutorService executor;
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Initializes a new {@link ExpiryPurger}.
+     *
+     * @param config The {@link PurgeConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public ExpiryPurger(PurgeConfiguration config, MeterRegistry registry) {
+        super();
+        this.config = config;
+        this.registry = registry;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("expiry-purge-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newSingleThreadExecutor(threadFactory);
+    }
+
+    /**
+     * Executes the given cleanup of a table asynchronously. The cleanup is skipped in case the previous cleanup of the same table is still running.
+     *
+     * @param table The name of the table
+     * @param cleanup The cleanup to execute
+     * @return <code>true</code> if the cleanup has been submitted, <code>false</code> if it has been skipped
+     */
+    public boolean execute(String table, Runnable cleanup) {
+        if (running.add(table) == false) {
+            LOG.info("Skipping cleanup of table {}, since the previous cleanup is still running.", table);
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    cleanup.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Cleanup of table {} failed: {}", table, e.getMessage(), e);
+                } finally {
+                    running.remove(table);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.remove(table);
+            return false;
+        }
+    }
+
+    /**
+     * Interrupts a running cleanup, which stops after its current batch
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Deletes all entries which are expired at the given date
+     *
+     * @param table The name of the table used to tag the metrics
+     * @param storage The {@link ExpiringStorage}
+     * @param date The date to check
+     * @param listener A listener notified with the ids of each deleted batch
+     * @return The number of deleted entries
+     */
+    public int purge(String table, ExpiringStorage storage, Date date, Consumer<List<String>> listener) {
+        Counter deletedCounter = Counter.builder(METRIC_NAME).tag(METRIC_TYPE, "count").tag(TYPE, "deleted").tag(TABLE, table).register(registry);
+        Timer batchTimer = Timer.builder(METRIC_NAME).tag(METRIC_TYPE, "timer").tag(TYPE, "batch").tag(TABLE, table).register(registry);
+        int batchSize = Math.max(1, config.getBatchSize());
+        int rate = config.getRate();
+        long start = System.nanoTime();
+        int result = 0;
+        while (Thread.currentThread().isInterrupted() == false) {
+            long batchStart = System.nanoTime();
+            List<String> ids = storage.getExpired(date, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            int deleted = storage.deleteExpired(ids, date);
+            batchTimer.record(System.nanoTime() - batchStart, TimeUnit.NANOSECONDS);
+            deletedCounter.increment(deleted);
+            listener.accept(ids);
+            result += deleted;
+            if (ids.size() < batchSize) {
+                break;
+            }
+            if (rate > 0) {
+                pace(start, result, rate);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits until deleting the given number of entries since the given start doesn't exceed the rate anymore
+     *
+     * @param start The start of the purge in nanoseconds
+     * @param deleted The number of deleted entries so far
+     * @param rate The maximum number of deleted entries per second
+     */
+    private static void pace(long start, int deleted, int rate) {
+        long wait = TimeUnit.SECONDS.toNanos(deleted) / rate - (System.nanoTime() - start);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
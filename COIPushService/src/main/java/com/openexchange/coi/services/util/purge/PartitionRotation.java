@@ -0,0 +1,192 @@
+/*
+ *
+ *    OPEN-XCHANGE legal information
+ *
+ *    All intellectual property rights in the Software are protected by
+ *    international copyright laws.
+ *
+ *
+ *    In some countries OX, OX Open-Xchange, open xchange and OXtender
+ *    as well as the corresponding Logos OX Open-Xchange and OX are registered
+ *    trademarks of the OX Software GmbH. group of companies.
+ *    The use of the Logos is not covered by the GNU General Public License.
+ *    Instead, you are allowed to use these Logos according to the terms and
+ *    conditions of the Creative Commons License, Version 2.5, Attribution,
+ *    Non-commercial, ShareAlike, and the interpretation of the term
+ *    Non-commercial applicable to the aforementioned license is published
+ *    on the web site http://www.open-xchange.com/EN/legal/index.html.
+ *
+ *    Please make sure that third-party modules and libraries are used
+ *    according to their respective licenses.
+ *
+ *    Any modifications to this package must retain all copyright notices
+ *    of the original copyright holder(s) for the original code used.
+ *
+ *    After any such modifications, the original and derivative code shall remain
+ *    under the copyright of the copyright holder(s) and/or original author(s)per
+ *    the Attribution and Assignment Agreement that can be located at
+ *    http://www.open-xchange.com/EN/developer/. The contributing author shall be
+ *    given Attribution for the derivative code and a license granting use.
+ *
+ *     Copyright (C) 2016-2020 OX Software GmbH
+ *     Mail: info@open-xchange.com
+ *
+ *
+ *     This program is free software; you can redistribute it and/or modify it
+ *     under the terms of the GNU General Public License, Version 2 as published
+ *     by the Free Software Foundation.
+ *
+ *     This program is distributed in the hope that it will be useful, but
+ *     WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *     or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *     for more details.
+ *
+ *     You should have received a copy of the GNU General Public License along
+ *     with this program; if not, write to the Free Software Foundation, Inc., 59
+ *     Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+package com.openexchange.coi.services.util.purge;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link PartitionRotation} rotates the partitions of tables which are range-partitioned by {@link ExpiryBuckets}.
+ * <p>
+ * Partitions for the upcoming buckets are split off the last partition, which holds everything else. Partitions whose buckets are completely
+ * expired are dropped as a whole instead of deleting their entries one by one. A partition which still contains entries that are not expired,
+ * e.g. because the database uses another time zone, is left to the {@link ExpiryPurger}.
+ * <p>
+ * Tables which aren't partitioned are ignored. Failures, e.g. because another node rotates the same table concurrently, are logged and don't abort
+ * the cleanup, since the {@link ExpiryPurger} deletes the expired entries anyway.
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+@Component
+public class PartitionRotation {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionRotation.class);
+
+    private static final String METRIC_NAME = "com.openexchange.coi.services.purge";
+    private static final String MAXVALUE = "MAXVALUE";
+    private static final String PARTITIONS = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS WHERE TABLE_SCHEMA=DATABASE() AND TABLE_NAME=? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION;";
+
+    private final JdbcTemplate template;
+    private final PurgeConfiguration config;
+    private final MeterRegistry registry;
+
+    /**
+     * Initializes a new {@link PartitionRotation}.
+     *
+     * @param template The {@link JdbcTemplate}
+     * @param config The {@link PurgeConfiguration}
+     * @param registry The {@link MeterRegistry}
+     */
+    @Autowired
+    public PartitionRotation(JdbcTemplate template, PurgeConfiguration config, MeterRegistry registry) {
+        super();
+        this.template = template;
+        this.config = config;
+        this.registry = registry;
+    }
+
+    /**
+     * Creates the partitions for the upcoming buckets and drops the expired partitions of the given table
+     *
+     * @param table The name of the table
+     * @param expiryColumn The name of the column holding the expiry
+     * @param date The date to check
+     * @return The number of dropped partitions
+     */
+    public int rotate(String table, String expiryColumn, Date date) {
+        List<Partition> partitions;
+        try {
+            partitions = template.query(PARTITIONS, (rs, rowNum) -> new Partition(rs.getString(1), rs.getString(2)), table);
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to load the partitions of table {}.", table, e);
+            return 0;
+        }
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+        int now = ExpiryBuckets.of(date);
+        try {
+            createPartitions(table, partitions, now);
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to create partitions for table {}. Trying again with the next cleanup.", table, e);
+        }
+        try {
+            return dropPartitions(table, expiryColumn, partitions, date, now);
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to drop expired partitions of table {}. Their entries are deleted one by one.", table, e);
+            return 0;
+        }
+    }
+
+    private void createPartitions(String table, List<Partition> partitions, int now) {
+        Partition last = partitions.get(partitions.size() - 1);
+        if (last.bound != ExpiryBuckets.NO_EXPIRY) {
+            LOG.warn("Unable to create partitions for table {}. The last partition {} isn't unbounded.", table, last.name);
+            return;
+        }
+        int interval = Math.max(1, config.getInterval());
+        int target = now + Math.max(interval, config.getAhead());
+        // The first partition also holds all older entries
+        int bound = partitions.size() == 1 ? now - now % interval : partitions.get(partitions.size() - 2).bound + interval;
+        if (bound > target) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(table).append(" REORGANIZE PARTITION ").append(last.name).append(" INTO (");
+        for (; bound <= target; bound += interval) {
+            sql.append("PARTITION p").append(bound).append(" VALUES LESS THAN (").append(bound).append("), ");
+        }
+        sql.append("PARTITION ").append(last.name).append(" VALUES LESS THAN MAXVALUE);");
+        template.execute(sql.toString());
+    }
+
+    private int dropPartitions(String table, String expiryColumn, List<Partition> partitions, Date date, int now) {
+        List<String> expired = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.bound > now) {
+                break;
+            }
+            String sql = "SELECT 1 FROM " + table + " PARTITION (" + partition.name + ") WHERE " + expiryColumn + ">? LIMIT 1;";
+            if (template.queryForList(sql, Integer.class, new Timestamp(date.getTime())).isEmpty() == false) {
+                LOG.warn("Partition {} of table {} still contains entries which are not expired and isn't dropped.", partition.name, table);
+                continue;
+            }
+            expired.add(partition.name);
+        }
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        template.execute("ALTER TABLE " + table + " DROP PARTITION " + String.join(",", expired) + ";");
+        Counter.builder(METRIC_NAME).tag("mtype", "count").tag("type", "dropped").tag("table", table).register(registry).increment(expired.size());
+        return expired.size();
+    }
+
+    private static class Partition {
+
+        final String name;
+        final int bound;
+
+        Partition(String name, String description) {
+            this.name = name;
+            this.bound = MAXVALUE.equals(description) ? ExpiryBuckets.NO_EXPIRY : Integer.parseInt(description);
+        }
+    }
+
+}
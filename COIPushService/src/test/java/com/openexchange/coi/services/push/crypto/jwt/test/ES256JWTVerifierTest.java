@@ -0,0 +1,80 @@
+package com.openexchange.coi.services.push.crypto.jwt.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.openexchange.coi.services.push.crypto.jwt.ES256JWTVerifier;
+import com.openexchange.coi.services.push.crypto.jwt.JWTValidationResult;
+
+/**
+ * {@link ES256JWTVerifierTest} - Contains tests for the {@link ES256JWTVerifier}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class ES256JWTVerifierTest {
+
+    private static final String AUDIENCE = "https://push.example.net";
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+    }
+
+    private static String sign(String audience, long exp) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder().audience(audience).expirationTime(new Date(exp)).subject("mailto:push@example.com").build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.ES256), claims);
+        jwt.sign(new ECDSASigner((ECPrivateKey) keyPair.getPrivate()));
+        return jwt.serialize();
+    }
+
+    /**
+     * Tests that a valid JWT is accepted and its expiration time is returned
+     */
+    @Test
+    public void testValid() throws Exception {
+        long exp = (System.currentTimeMillis() / 1000 + 3600) * 1000;
+        JWTValidationResult result = new ES256JWTVerifier(AUDIENCE).verify(sign(AUDIENCE, exp), keyPair.getPublic());
+        assertThat(result.getMessage(), result.isSuccess(), is(true));
+        assertThat(result.getExpirationTime().getTime(), is(exp));
+    }
+
+    /**
+     * Tests that invalid JWTs are rejected
+     */
+    @Test
+    public void testInvalid() throws Exception {
+        ES256JWTVerifier verifier = new ES256JWTVerifier(AUDIENCE);
+        long now = System.currentTimeMillis();
+        String valid = sign(AUDIENCE, now + 3600000);
+
+        assertThat("Wrong key", verifier.verify(valid, otherKeyPair.getPublic()).isFailure(), is(true));
+        assertThat("Truncated signature", verifier.verify(valid.substring(0, valid.length() - 1), keyPair.getPublic()).isFailure(), is(true));
+        assertThat("Wrong audience", verifier.verify(sign("https://other.example.net", now + 3600000), keyPair.getPublic()).isFailure(), is(true));
+        assertThat("Expired", verifier.verify(sign(AUDIENCE, now - 1000), keyPair.getPublic()).isFailure(), is(true));
+        assertThat("Too far in future", verifier.verify(sign(AUDIENCE, now + 25 * 3600000L), keyPair.getPublic()).isFailure(), is(true));
+        assertThat("Too many parts", verifier.verify(valid + ".", keyPair.getPublic()).isFailure(), is(true));
+
+        // Unsecured JWT with alg=none
+        String unsecured = "eyJhbGciOiJub25lIn0" + valid.substring(valid.indexOf('.'), valid.lastIndexOf('.') + 1);
+        assertThat("Unsecured", verifier.verify(unsecured, keyPair.getPublic()).isFailure(), is(true));
+    }
+
+}
@@ -2,12 +2,16 @@
 package com.openexchange.coi.services.push.crypto.key.parsing.test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import java.security.PublicKey;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import org.junit.Test;
 import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.push.crypto.keys.parsing.KeyConverter;
+import com.openexchange.coi.services.push.crypto.keys.parsing.ParsedPublicKey;
 import com.openexchange.coi.services.push.crypto.keys.parsing.PublicKeyParser;
 
 /**
@@ -57,4 +61,22 @@ public class PublicKeyParserTest {
             assertThat("The parsed key must not be null", parsedKey, notNullValue());
         }
     }
+
+    /**
+     * Tests that a {@link ParsedPublicKey} matches its X.962 point as well as its DER encoding
+     * 
+     * @throws CoiServiceException Due a parser error
+     */
+    @Test
+    public void testParsedPublicKeyMatches() throws CoiServiceException {
+        String raw = validKeyMaterialTestSet.get(2);
+        ParsedPublicKey key = new ParsedPublicKey(new PublicKeyParser().parse(raw));
+        byte[] point = Base64.getUrlDecoder().decode(raw);
+        assertThat(key.getPoint().length, is(KeyConverter.X962_LENGTH));
+        assertThat(key.matches(point), is(true));
+        assertThat(key.matches(KeyConverter.X962ToDER(point)), is(true));
+
+        ParsedPublicKey other = new ParsedPublicKey(new PublicKeyParser().parse(validKeyMaterialTestSet.get(1)));
+        assertThat(other.matches(point), is(false));
+    }
 }
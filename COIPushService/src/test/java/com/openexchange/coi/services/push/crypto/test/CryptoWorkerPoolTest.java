@@ -0,0 +1,138 @@
+package com.openexchange.coi.services.push.crypto.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.crypto.CryptoPoolConfiguration;
+import com.openexchange.coi.services.push.crypto.CryptoWorkerPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link CryptoWorkerPoolTest} - Contains tests for the {@link CryptoWorkerPool}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class CryptoWorkerPoolTest {
+
+    private CryptoPoolConfiguration config;
+    private SimpleMeterRegistry registry;
+    private CryptoWorkerPool pool;
+
+    @Before
+    public void setUp() {
+        config = new CryptoPoolConfiguration();
+        config.setEnabled(true);
+        config.setWorkers(1);
+        config.setQueueSize(1);
+        registry = new SimpleMeterRegistry();
+        pool = new CryptoWorkerPool(config, registry);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Tests that results and errors of the tasks are passed to the caller
+     */
+    @Test
+    public void testExecute() throws Exception {
+        assertThat(pool.execute(() -> "result"), is("result"));
+        try {
+            pool.execute(() -> {
+                throw CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create();
+            });
+            fail("The error of the task should be passed to the caller");
+        } catch (CoiServiceException e) {
+            assertThat(CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.equals(e), is(true));
+        }
+    }
+
+    /**
+     * Tests that errors of the tasks are passed to the caller instead of leaving it waiting
+     */
+    @Test(expected = LinkageError.class)
+    public void testError() throws Exception {
+        pool.execute(() -> {
+            throw new LinkageError("test");
+        });
+    }
+
+    /**
+     * Tests that a caller stops waiting for a verification which doesn't complete in time
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        config.setTimeout(100);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return Boolean.TRUE;
+            });
+            fail("The verification should time out");
+        } catch (CoiServiceException e) {
+            assertThat(CoiServiceExceptionCodes.VERIFICATION_QUEUE_FULL.equals(e), is(true));
+        } finally {
+            release.countDown();
+        }
+        assertThat(registry.get("com.openexchange.coi.services.push.crypto").tag("type", "timeout").counter().count(), is(1d));
+    }
+
+    /**
+     * Tests that verifications are rejected once the worker is busy and the queue is full
+     */
+    @Test
+    public void testRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CryptoWorkerPool.CryptoTask<Boolean> blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Boolean.TRUE;
+        };
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> call(blocking));
+        started.await();
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> call(() -> Boolean.TRUE));
+        while (registry.get("com.openexchange.coi.services.push.crypto").tag("mtype", "depth").gauge().value() < 1) {
+            Thread.sleep(10);
+        }
+        try {
+            pool.execute(() -> Boolean.TRUE);
+            fail("The verification should be rejected");
+        } catch (CoiServiceException e) {
+            assertThat(CoiServiceExceptionCodes.VERIFICATION_QUEUE_FULL.equals(e), is(true));
+        } finally {
+            release.countDown();
+        }
+        assertThat(running.get(), is(Boolean.TRUE));
+        assertThat(queued.get(), is(Boolean.TRUE));
+        assertThat(registry.get("com.openexchange.coi.services.push.crypto").tag("type", "rejected").counter().count(), is(1d));
+    }
+
+    private Boolean call(CryptoWorkerPool.CryptoTask<Boolean> task) {
+        try {
+            return pool.execute(task);
+        } catch (CoiServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
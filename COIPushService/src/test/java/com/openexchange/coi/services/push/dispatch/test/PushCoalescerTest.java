@@ -0,0 +1,114 @@
+package com.openexchange.coi.services.push.dispatch.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.openexchange.coi.services.push.dispatch.CoalescingConfiguration;
+import com.openexchange.coi.services.push.dispatch.PushCoalescer;
+import com.openexchange.coi.services.push.dispatch.PushDispatcher;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PushCoalescerTest} - Contains tests for the {@link PushCoalescer}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushCoalescerTest {
+
+    private static final long WINDOW = 100;
+
+    private PushDispatcher dispatcher;
+    private PushCoalescer coalescer;
+    private PushResource resource;
+
+    @Before
+    public void setUp() {
+        CoalescingConfiguration config = new CoalescingConfiguration();
+        config.setEnabled(true);
+        config.setWindow(WINDOW);
+        coalescer = new PushCoalescer(config, new SimpleMeterRegistry());
+        dispatcher = mock(PushDispatcher.class);
+        when(dispatcher.sendAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        ReflectionTestUtils.setField(coalescer, "dispatcher", dispatcher);
+
+        DefaultPushResource res = new DefaultPushResource();
+        res.setId("0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a");
+        resource = res;
+    }
+
+    @After
+    public void tearDown() {
+        coalescer.shutdown();
+    }
+
+    private static byte[] data(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tests that a pending push message is replaced by a newer one with the same topic and sent once the window elapsed
+     */
+    @Test
+    public void testSameTopic() throws Exception {
+        byte[] first = data("first");
+        byte[] second = data("second");
+        assertThat(coalescer.submit(resource, "mail", first), is(true));
+        assertThat(coalescer.submit(resource, "mail", second), is(true));
+        verify(dispatcher, never()).sendAsync(any(), any());
+
+        verify(dispatcher, timeout(5 * WINDOW)).sendAsync(resource, second);
+        Thread.sleep(2 * WINDOW);
+        verify(dispatcher, never()).sendAsync(resource, first);
+    }
+
+    /**
+     * Tests that push messages with different topics don't replace each other
+     */
+    @Test
+    public void testDifferentTopics() {
+        byte[] mail = data("mail");
+        byte[] chat = data("chat");
+        assertThat(coalescer.submit(resource, "mail", mail), is(true));
+        assertThat(coalescer.submit(resource, "chat", chat), is(true));
+
+        verify(dispatcher, timeout(5 * WINDOW)).sendAsync(resource, mail);
+        verify(dispatcher, timeout(5 * WINDOW)).sendAsync(resource, chat);
+    }
+
+    /**
+     * Tests that push messages without a topic are never held back and therefore never dropped
+     */
+    @Test
+    public void testNoTopic() throws Exception {
+        assertThat(coalescer.submit(resource, null, data("first")), is(false));
+        assertThat(coalescer.submit(resource, null, data("second")), is(false));
+        Thread.sleep(2 * WINDOW);
+        verify(dispatcher, never()).sendAsync(any(), any());
+    }
+
+    /**
+     * Tests that pending push messages are sent on shutdown
+     */
+    @Test
+    public void testShutdown() {
+        byte[] mail = data("mail");
+        assertThat(coalescer.submit(resource, "mail", mail), is(true));
+        coalescer.shutdown();
+        verify(dispatcher).sendAsync(resource, mail);
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.openexchange.coi.services.push.dispatch.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.dispatch.DispatchConfiguration;
+import com.openexchange.coi.services.push.dispatch.DispatchMode;
+import com.openexchange.coi.services.push.dispatch.PushDispatcher;
+import com.openexchange.coi.services.push.rest.util.Utils;
+import com.openexchange.coi.services.push.retry.RetryJournal;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PushDispatcherTest} - Contains tests for the {@link PushDispatcher}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushDispatcherTest {
+
+    private static final byte[] DATA = "test".getBytes(StandardCharsets.UTF_8);
+    private static final int RETRY_AFTER = 7;
+
+    private SimpleMeterRegistry registry;
+    private PushService pushService;
+    private Utils utils;
+    private RetryJournal retryJournal;
+    private PushDispatcher dispatcher;
+    private DefaultPushResource resource;
+
+    @Before
+    public void setUp() {
+        DispatchConfiguration config = new DispatchConfiguration();
+        config.setMode(DispatchMode.queued);
+        config.setWorkers(1);
+        config.setQueueSize(1);
+        config.setRetryAfter(RETRY_AFTER);
+        config.setShutdownTimeout(1000);
+        registry = new SimpleMeterRegistry();
+        dispatcher = new PushDispatcher(config, registry);
+        pushService = mock(PushService.class);
+        utils = mock(Utils.class);
+        retryJournal = mock(RetryJournal.class);
+        ReflectionTestUtils.setField(dispatcher, "pushService", pushService);
+        ReflectionTestUtils.setField(dispatcher, "utils", utils);
+        ReflectionTestUtils.setField(dispatcher, "retryJournal", retryJournal);
+
+        resource = new DefaultPushResource();
+        resource.setId("0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a");
+        resource.setValid(true);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Tests that push messages are rejected with a Retry-After value once the worker is busy and the dispatch queue is full
+     */
+    @Test
+    public void testQueueFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(pushService).sendPushToDevice(any(), any());
+
+        dispatcher.dispatch(resource, DATA);
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        dispatcher.dispatch(resource, DATA);
+        try {
+            dispatcher.dispatch(resource, DATA);
+            fail("Expected " + CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.name());
+        } catch (CoiServiceException e) {
+            assertThat(CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.equals(e), is(true));
+            assertThat(e.getArgs().get(0), is(Integer.valueOf(RETRY_AFTER)));
+        }
+        assertThat(registry.get("com.openexchange.coi.services.push.dispatch").tag("type", "rejected").counter().count(), is(1d));
+
+        release.countDown();
+        verify(pushService, timeout(5000).times(2)).sendPushToDevice(resource, DATA);
+    }
+
+    /**
+     * Tests that an asynchronous push message is completed once the transport completed and that the push resource is validated afterwards
+     */
+    @Test
+    public void testSendAsync() throws Exception {
+        resource.setValid(false);
+        CompletableFuture<Void> transport = new CompletableFuture<>();
+        when(pushService.sendPushToDeviceAsync(resource, DATA)).thenReturn(transport);
+
+        CompletableFuture<Void> result = dispatcher.sendAsync(resource, DATA);
+        assertThat(result.isDone(), is(false));
+        verify(pushService, never()).touch(any(), any());
+
+        transport.complete(null);
+        assertThat(result.isDone(), is(true));
+        assertThat(result.isCompletedExceptionally(), is(false));
+        assertThat(resource.isValid(), is(true));
+        verify(utils).setExpiryDate(resource, true);
+        verify(pushService).touch(null, resource);
+    }
+
+    /**
+     * Tests that an asynchronous push message failing because of a transient error is journaled and completed normally
+     */
+    @Test
+    public void testSendAsyncTransient() {
+        when(retryJournal.isEnabled()).thenReturn(Boolean.TRUE);
+        when(retryJournal.append(anyString(), any())).thenReturn(Boolean.TRUE);
+        when(pushService.sendPushToDeviceAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create("test", "1")));
+
+        dispatcher.sendAsync(resource, DATA).join();
+        verify(retryJournal).append(resource.getId(), DATA);
+    }
+
+    /**
+     * Tests that an asynchronous push message failing because of any other error is completed with that error
+     */
+    @Test
+    public void testSendAsyncError() {
+        when(retryJournal.isEnabled()).thenReturn(Boolean.TRUE);
+        when(pushService.sendPushToDeviceAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(CoiServiceExceptionCodes.QUOTA_EXCEEDED.create("30")));
+        try {
+            dispatcher.sendAsync(resource, DATA).join();
+            fail("Expected " + CoiServiceExceptionCodes.QUOTA_EXCEEDED.name());
+        } catch (CompletionException e) {
+            assertThat(CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals((CoiServiceException) e.getCause()), is(true));
+        }
+        verify(retryJournal, never()).append(anyString(), any());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.openexchange.coi.services.push.rest.batch.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.rest.batch.PushBatchEntry;
+import com.openexchange.coi.services.push.rest.batch.PushBatchReader;
+
+/**
+ * {@link PushBatchReaderTest} - Contains tests for the {@link PushBatchReader}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushBatchReaderTest {
+
+    private static final String ID = "0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a";
+
+    private static void writeFrame(DataOutputStream out, String id, String authorization, byte[] payload) throws IOException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(idBytes.length);
+        out.write(idBytes);
+        byte[] authBytes = authorization == null ? new byte[0] : authorization.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(authBytes.length);
+        out.write(authBytes);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /**
+     * Tests that all frames are read and oversized push messages are skipped
+     */
+    @Test
+    public void testRead() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeFrame(out, ID, "vapid t=abc, k=def", "first".getBytes(StandardCharsets.UTF_8));
+        writeFrame(out, ID, null, new byte[20]);
+        writeFrame(out, ID, null, "third".getBytes(StandardCharsets.UTF_8));
+
+        PushBatchReader reader = new PushBatchReader(new ByteArrayInputStream(bytes.toByteArray()), 10);
+        PushBatchEntry entry = reader.next();
+        assertThat(entry.getId(), is(ID));
+        assertThat(entry.getAuthorization(), is("vapid t=abc, k=def"));
+        assertThat(new String(entry.getPayload(), StandardCharsets.UTF_8), is("first"));
+
+        entry = reader.next();
+        assertThat(entry.getAuthorization(), nullValue());
+        assertThat("Oversized push messages should be skipped", entry.getPayload(), nullValue());
+        assertThat(entry.getPayloadSize(), is(20L));
+
+        entry = reader.next();
+        assertThat(new String(entry.getPayload(), StandardCharsets.UTF_8), is("third"));
+        assertThat(reader.next(), nullValue());
+    }
+
+    /**
+     * Tests that a truncated frame is rejected
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeFrame(new DataOutputStream(bytes), ID, null, "payload".getBytes(StandardCharsets.UTF_8));
+        byte[] data = bytes.toByteArray();
+
+        PushBatchReader reader = new PushBatchReader(new ByteArrayInputStream(Arrays.copyOf(data, data.length - 2)), 100);
+        try {
+            reader.next();
+            fail("Truncated frame should be rejected");
+        } catch (CoiServiceException e) {
+            assertThat(CoiServiceExceptionCodes.INVALID_REQUEST_BODY.equals(e), is(true));
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.openexchange.coi.services.push.rest.cache.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.crypto.keys.parsing.ParsedPublicKey;
+import com.openexchange.coi.services.push.rest.cache.PublicKeyCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PublicKeyCacheTest} - Contains tests for the {@link PublicKeyCache}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PublicKeyCacheTest {
+
+    private static final String KEY = "BA1Hxzyi1RUM1b5wjxsn7nGxAszw2u61m164i3MrAIxHF6YK5h4SDYic-dRuU_RCPCfA5aq9ojSwk5Y2EmClBPs";
+
+    private SimpleMeterRegistry registry;
+    private PublicKeyCache cache;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new PublicKeyCache(registry);
+        cache.init();
+    }
+
+    private double size() {
+        return registry.get("cache.size").tag("cache", "vapid.keys").gauge().value();
+    }
+
+    /**
+     * Tests that a cached public key is returned instead of parsing the key material again
+     */
+    @Test
+    public void testHit() throws Exception {
+        ParsedPublicKey key = cache.getPublicKey(KEY);
+        assertThat(cache.getPublicKey(KEY), is(sameInstance(key)));
+        assertThat(size(), is(1d));
+    }
+
+    /**
+     * Tests that invalid key material isn't cached
+     */
+    @Test
+    public void testInvalidNotCached() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.getPublicKey("invalid");
+                fail("Expected " + CoiServiceExceptionCodes.INVALID_PUBLIC_KEY.name());
+            } catch (CoiServiceException e) {
+                assertThat(CoiServiceExceptionCodes.INVALID_PUBLIC_KEY.equals(e), is(true));
+            }
+        }
+        assertThat(size(), is(0d));
+    }
+
+    /**
+     * Tests that the cache is bypassed if it is disabled
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        cache.setEnabled(false);
+        ParsedPublicKey key = cache.getPublicKey(KEY);
+        assertThat(cache.getPublicKey(KEY), is(not(sameInstance(key))));
+        assertThat(size(), is(0d));
+    }
+
+}
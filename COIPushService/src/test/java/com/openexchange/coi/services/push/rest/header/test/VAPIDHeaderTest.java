@@ -5,8 +5,12 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.junit.Test;
 import com.openexchange.coi.services.push.rest.header.VAPIDHeader;
 
@@ -90,4 +94,86 @@ public class VAPIDHeaderTest {
             //            assertJWT(jwt);
 		}
 	}
+
+	/**
+	 * Fragments used to mutate the test headers
+	 */
+	private static final String[] FRAGMENTS = { ",", "\n", " ", "\t", "\r", "t", "k", "=", "t=", "k=", ".", "A", "Authorization:", "Authorization: ", "x" };
+
+	/**
+	 * Tests the parser against the former regex based implementation with randomly mutated headers
+	 */
+	@Test
+	public void testFuzz() {
+		Random random = new Random(8292);
+		List<String> seeds = new ArrayList<>(testHeaders);
+		seeds.addAll(invalidTestHeaders);
+		seeds.add("");
+		seeds.add(",,,");
+		for (int run = 0; run < 20000; run++) {
+			StringBuilder header = new StringBuilder(seeds.get(random.nextInt(seeds.size())));
+			int mutations = random.nextInt(6);
+			for (int i = 0; i < mutations; i++) {
+				int position = random.nextInt(header.length() + 1);
+				if (random.nextBoolean() || header.length() == 0) {
+					header.insert(position, FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				} else {
+					header.delete(Math.min(position, header.length() - 1), Math.min(header.length(), position + 1 + random.nextInt(8)));
+				}
+			}
+			String value = header.toString();
+			VAPIDHeader parsed = new VAPIDHeader(value);
+			LegacyVAPIDHeader legacy = new LegacyVAPIDHeader(value);
+			assertThat("JWT of " + value, parsed.getJWT(), is(legacy.getJWT()));
+			assertThat("Key of " + value, parsed.getKey(), is(legacy.getKey()));
+		}
+	}
+
+	/**
+	 * The former regex based implementation of the {@link VAPIDHeader}
+	 */
+	private static class LegacyVAPIDHeader {
+
+		private final String header;
+		private final Pattern jwtTokenPattern = Pattern.compile("t=(.*)", Pattern.DOTALL);
+		private final Pattern jwtKeyPattern = Pattern.compile("k=(.*)", Pattern.DOTALL);
+		private final Pattern fallbackPattern = Pattern.compile("Authorization:\\s.*\\s(.*)", Pattern.DOTALL);
+
+		LegacyVAPIDHeader(String header) {
+			this.header = header;
+		}
+
+		private String validate(String jwt) {
+			int dotCount = jwt.length() - jwt.replace(".", "").length();
+			return dotCount == 2 ? jwt : null;
+		}
+
+		String getJWT() {
+			final String[] fields = header.split(",");
+			for (String field : fields) {
+				field = field.replace("\n", "");
+				Matcher matcher = jwtTokenPattern.matcher(field);
+				if (matcher.find()) {
+					return validate(matcher.group(1));
+				}
+				if (fields.length == 1) {
+					Matcher fallbackMather = fallbackPattern.matcher(field);
+					if (fallbackMather.find()) {
+						return validate(fallbackMather.group(1));
+					}
+				}
+			}
+			return null;
+		}
+
+		String getKey() {
+			for (String field : header.split(",")) {
+				Matcher matcher = jwtKeyPattern.matcher(field);
+				if (matcher.find()) {
+					return matcher.group(1);
+				}
+			}
+			return null;
+		}
+	}
 }
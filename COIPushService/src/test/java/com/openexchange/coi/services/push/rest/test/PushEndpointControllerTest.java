@@ -0,0 +1,211 @@
+package com.openexchange.coi.services.push.rest.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.PushConfiguration;
+import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.dispatch.PushCoalescer;
+import com.openexchange.coi.services.push.dispatch.PushDispatcher;
+import com.openexchange.coi.services.push.rest.PushEndpointController;
+import com.openexchange.coi.services.push.rest.VAPIDValidator;
+import com.openexchange.coi.services.push.rest.batch.PushBatchResult;
+import com.openexchange.coi.services.push.rest.body.MulticastBody;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PushEndpointControllerTest} - Contains tests for the {@link PushEndpointController}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushEndpointControllerTest {
+
+    private static final String ID = "0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a";
+    private static final byte[] DATA = "test".getBytes(StandardCharsets.UTF_8);
+
+    private PushService pushService;
+    private PushDispatcher dispatcher;
+    private VAPIDValidator vapidValidator;
+    private PushEndpointController controller;
+    private DefaultPushResource resource;
+
+    @Before
+    public void setUp() throws Exception {
+        controller = new PushEndpointController(new SimpleMeterRegistry());
+        pushService = mock(PushService.class);
+        dispatcher = mock(PushDispatcher.class);
+        vapidValidator = mock(VAPIDValidator.class);
+        PushCoalescer coalescer = mock(PushCoalescer.class);
+        ReflectionTestUtils.setField(controller, "pushService", pushService);
+        ReflectionTestUtils.setField(controller, "vapidValidator", vapidValidator);
+        ReflectionTestUtils.setField(controller, "dispatcher", dispatcher);
+        ReflectionTestUtils.setField(controller, "coalescer", coalescer);
+        ReflectionTestUtils.setField(controller, "pushConfiguration", new PushConfiguration());
+
+        resource = new DefaultPushResource();
+        resource.setId(ID);
+        resource.setValid(true);
+        when(pushService.findById(ID)).thenReturn(resource);
+    }
+
+    private static DefaultPushResource resource(String id, byte[] publicKey) {
+        DefaultPushResource result = new DefaultPushResource();
+        result.setId(id);
+        result.setPublicKey(publicKey);
+        result.setValid(true);
+        return result;
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest result = new MockHttpServletRequest("POST", "/send/" + ID);
+        result.setContent(DATA);
+        return result;
+    }
+
+    /**
+     * Tests that a push message is answered with 201 once it is put into the dispatch queue
+     */
+    @Test
+    public void testQueued() throws Exception {
+        when(dispatcher.isQueued()).thenReturn(Boolean.TRUE);
+        ResponseEntity<Object> response = controller.push(ID, request()).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.CREATED));
+    }
+
+    /**
+     * Tests that a full dispatch queue is answered with 503 and the configured Retry-After value
+     */
+    @Test
+    public void testQueueFull() throws Exception {
+        when(dispatcher.isQueued()).thenReturn(Boolean.TRUE);
+        doThrow(CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.create(Integer.valueOf(7))).when(dispatcher).dispatch(any(), any());
+        try {
+            controller.push(ID, request());
+            fail("Expected " + CoiServiceExceptionCodes.DISPATCH_QUEUE_FULL.name());
+        } catch (CoiServiceException e) {
+            ResponseEntity<Object> response = controller.handlePushExceptions(e);
+            assertThat(response.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+            assertThat(response.getHeaders().getFirst("Retry-After"), is("7"));
+        }
+    }
+
+    /**
+     * Tests that an asynchronous push message is answered once the transport completed
+     */
+    @Test
+    public void testAsync() throws Exception {
+        when(dispatcher.isAsync()).thenReturn(Boolean.TRUE);
+        CompletableFuture<Void> transport = new CompletableFuture<>();
+        when(dispatcher.sendAsync(resource, DATA)).thenReturn(transport);
+
+        CompletableFuture<ResponseEntity<Object>> response = controller.push(ID, request());
+        assertThat(response.isDone(), is(false));
+        transport.complete(null);
+        assertThat(response.join().getStatusCode(), is(HttpStatus.CREATED));
+    }
+
+    /**
+     * Tests that errors of an asynchronous push message are mapped like the ones of a synchronous push message
+     */
+    @Test
+    public void testAsyncErrors() throws Exception {
+        when(dispatcher.isAsync()).thenReturn(Boolean.TRUE);
+        when(dispatcher.sendAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(CoiServiceExceptionCodes.QUOTA_EXCEEDED.create("30")));
+        ResponseEntity<Object> response = controller.push(ID, request()).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(response.getHeaders().getFirst("Retry-After"), is("30"));
+
+        when(dispatcher.sendAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.create("test", "2")));
+        response = controller.push(ID, request()).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(response.getHeaders().getFirst("Retry-After"), is("2"));
+
+        when(dispatcher.sendAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create()));
+        response = controller.push(ID, request()).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.NOT_FOUND));
+    }
+
+    /**
+     * Tests that unexpected errors of an asynchronous push message are passed on
+     */
+    @Test(expected = CompletionException.class)
+    public void testAsyncUnexpectedError() throws Exception {
+        when(dispatcher.isAsync()).thenReturn(Boolean.TRUE);
+        when(dispatcher.sendAsync(resource, DATA)).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("test")));
+        controller.push(ID, request()).join();
+    }
+
+    /**
+     * Tests that a multicast validates the VAPID header once per public key and answers with a result per push resource in the order of the given ids
+     */
+    @Test
+    public void testMulticast() throws Exception {
+        String id2 = "1c7d2a6f-6f5b-4e6b-8a1c-3d2e6c9f7a8b";
+        String id3 = "2d8e3b7a-7a6c-4f7c-9b2d-4e3f7d0a8b9c";
+        String missing = "3e9f4c8b-8b7d-4a8d-8c3e-5f4a8e1b9c0d";
+        byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        byte[] otherKey = "other".getBytes(StandardCharsets.UTF_8);
+        DefaultPushResource second = resource(id2, key);
+        DefaultPushResource third = resource(id3, otherKey);
+        resource.setPublicKey(key);
+        when(pushService.findByIds(anyList())).thenReturn(Arrays.asList(resource, second, third));
+        doThrow(CoiServiceExceptionCodes.VAPID_KEY_MISMATCH.create()).when(vapidValidator).validate(any(), eq(id3), any());
+        when(dispatcher.multicastAsync(Arrays.asList(resource, second), DATA)).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap(id2, CoiServiceExceptionCodes.QUOTA_EXCEEDED.create("30"))));
+
+        MulticastBody body = new MulticastBody(Arrays.asList(ID, "invalid", id2, ID, id3, missing), DATA);
+        ResponseEntity<Object> response = controller.multicast(body, request()).join();
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        verify(vapidValidator, times(2)).validate(any(), anyString(), any());
+
+        @SuppressWarnings("unchecked") List<PushBatchResult> results = (List<PushBatchResult>) response.getBody();
+        assertThat(results.size(), is(5));
+        assertResult(results.get(0), ID, HttpStatus.CREATED);
+        assertResult(results.get(1), "invalid", HttpStatus.BAD_REQUEST);
+        assertResult(results.get(2), id2, HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(results.get(2).getRetryAfter(), is("30"));
+        assertResult(results.get(3), id3, HttpStatus.FORBIDDEN);
+        assertResult(results.get(4), missing, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Tests that a multicast with too many ids is rejected
+     */
+    @Test(expected = CoiServiceException.class)
+    public void testMulticastBatchSizeExceeded() throws Exception {
+        PushConfiguration configuration = new PushConfiguration();
+        configuration.setMaxBatchSize(1);
+        ReflectionTestUtils.setField(controller, "pushConfiguration", configuration);
+        controller.multicast(new MulticastBody(Arrays.asList(ID, ID), DATA), request());
+    }
+
+    private static void assertResult(PushBatchResult result, String id, HttpStatus status) {
+        assertThat(result.getId(), is(id));
+        assertThat(result.getStatus(), is(status.value()));
+    }
+
+}
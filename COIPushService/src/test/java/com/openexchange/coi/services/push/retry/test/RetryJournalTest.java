@@ -0,0 +1,130 @@
+package com.openexchange.coi.services.push.retry.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.push.retry.RetryConfiguration;
+import com.openexchange.coi.services.push.retry.RetryEntry;
+import com.openexchange.coi.services.push.retry.RetryJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link RetryJournalTest} - Contains tests for the {@link RetryJournal}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class RetryJournalTest {
+
+    private static final byte[] DATA = "push message".getBytes(StandardCharsets.UTF_8);
+
+    private Path directory;
+    private RetryConfiguration config;
+    private RetryJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("retry");
+        config = new RetryConfiguration();
+        config.setEnabled(true);
+        config.setDirectory(directory.toString());
+        config.setSegmentSize(256);
+        config.setMaxSegments(4);
+        config.setInitialBackoff(0);
+        journal = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private RetryJournal open() throws IOException {
+        RetryJournal result = new RetryJournal(config, new SimpleMeterRegistry());
+        result.init();
+        return result;
+    }
+
+    /**
+     * Tests that pending entries survive a restart while completed ones don't
+     */
+    @Test
+    public void testRecovery() throws Exception {
+        assertThat(journal.append("first", DATA), is(true));
+        assertThat(journal.append("second", DATA), is(true));
+        List<RetryEntry> due = journal.pollDue(1);
+        journal.complete(due.get(0));
+        journal.close();
+
+        journal = open();
+        due = journal.pollDue(10);
+        assertThat(due.size(), is(1));
+        assertThat(due.get(0).getResourceId(), is("second"));
+        assertThat(journal.getPayload(due.get(0)), is(DATA));
+    }
+
+    /**
+     * Tests that a torn record at the end of a segment is ignored on recovery
+     */
+    @Test
+    public void testTornWrite() throws Exception {
+        journal.append("first", DATA);
+        journal.append("second", DATA);
+        journal.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().get();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // Corrupt the payload of the second record
+            long secondRecord = 4 + 1 + 4 + 8 + 8 + 2 + "first".length() + 4 + DATA.length + 4;
+            file.seek(secondRecord + 40);
+            file.write(0x42);
+        }
+
+        journal = open();
+        List<RetryEntry> due = journal.pollDue(10);
+        assertThat(due.size(), is(1));
+        assertThat(due.get(0).getResourceId(), is("first"));
+    }
+
+    /**
+     * Tests that rescheduled entries keep their attempts and that drained segments are removed
+     */
+    @Test
+    public void testRescheduleAndCompaction() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            assertThat(journal.append("resource" + i, DATA), is(true));
+        }
+        assertThat("Entries should be spread over several segments", journal.getSegments() > 1, is(true));
+
+        List<RetryEntry> due = journal.pollDue(10);
+        assertThat(due.size(), is(8));
+        for (int i = 1; i < due.size(); i++) {
+            journal.complete(due.get(i));
+        }
+        assertThat(journal.reschedule(due.get(0), 0), is(true));
+        journal.compact();
+
+        assertThat("Only the active segment should be left", journal.getSegments(), is(1));
+        due = journal.pollDue(10);
+        assertThat(due.size(), is(1));
+        assertThat(due.get(0).getResourceId(), is("resource0"));
+        assertThat(due.get(0).getAttempt(), is(1));
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.openexchange.coi.services.push.storage.mysql.mapper.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.emptyArray;
+import java.util.Date;
+import org.junit.Test;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.PushResourceField;
+import com.openexchange.coi.services.push.storage.mysql.mapper.PushResourceMapper;
+
+/**
+ * {@link PushResourceMapperTest} - Contains tests for the {@link PushResourceMapper}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushResourceMapperTest {
+
+    private static PushResource create() {
+        DefaultPushResource result = new DefaultPushResource();
+        result.setId("0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a");
+        result.setAppId("com.openexchange.coi");
+        result.setPushToken("token");
+        result.setTransport("firebase");
+        result.setLastModified(new Date(1000));
+        result.setExpireDate(new Date(2000));
+        result.setPublicKey(new byte[] { 4, 1, 2, 3 });
+        result.setValid(true);
+        return result;
+    }
+
+    /**
+     * Tests that only the changed fields are detected as different
+     */
+    @Test
+    public void testDifferentFields() {
+        PushResourceMapper mapper = PushResourceMapper.getInstance();
+        PushResource original = create();
+        PushResource update = create();
+        assertThat("Equal public keys in different arrays must not be considered as changed", mapper.getDifferentFields(original, update), emptyArray());
+
+        update.setPushToken("other");
+        update.setExpireDate(new Date(3000));
+        assertThat(mapper.getDifferentFields(original, update), arrayContainingInAnyOrder(PushResourceField.pushtoken, PushResourceField.expireDate));
+
+        update = create();
+        update.setPublicKey(new byte[] { 4, 1, 2, 4 });
+        assertThat(mapper.getDifferentFields(original, update), arrayContainingInAnyOrder(PushResourceField.publicKey));
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.openexchange.coi.services.push.storage.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.PushResourceCache;
+import com.openexchange.coi.services.push.storage.PushResourceStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PushResourceCacheTest} - Contains tests for the {@link PushResourceCache}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushResourceCacheTest {
+
+    private static final String ID = "0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a";
+    private static final String OTHER_ID = "5d0f3c2a-7b1e-4c6d-8a9f-1e2d3c4b5a69";
+    private static final String MISSING_ID = "9f1c2e4a-0000-4000-8000-000000000000";
+
+    private TestStorage storage;
+    private PushResourceCache cache;
+
+    @Before
+    public void setUp() {
+        storage = new TestStorage();
+        storage.add(ID);
+        storage.add(OTHER_ID);
+        cache = new PushResourceCache(storage, new SimpleMeterRegistry());
+        cache.setEnabled(true);
+        cache.init();
+    }
+
+    /**
+     * Tests that concurrent lookups of the same push resource load it only once
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        storage.block = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Optional<PushResource>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.get(ID)));
+            }
+            Thread.sleep(100);
+            storage.block.countDown();
+            for (Future<Optional<PushResource>> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS).get().getId(), is(ID));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(storage.loads.get(), is(1));
+        assertThat(cache.get(ID).isPresent(), is(true));
+        assertThat(storage.loads.get(), is(1));
+    }
+
+    /**
+     * Tests that missing push resources are loaded at once
+     */
+    @Test
+    public void testGetAll() {
+        cache.get(ID);
+        assertThat(cache.getAll(Arrays.asList(ID, OTHER_ID, MISSING_ID)).size(), is(2));
+        assertThat(storage.loads.get(), is(2));
+        assertThat(cache.get(MISSING_ID).isPresent(), is(false));
+    }
+
+    /**
+     * Tests that re-binding the configuration keeps the cached push resources
+     */
+    @Test
+    public void testRebind() {
+        cache.get(ID);
+        cache.setMax(10);
+        cache.init();
+        assertThat(cache.get(ID).isPresent(), is(true));
+        assertThat(storage.loads.get(), is(1));
+    }
+
+    /**
+     * Tests that lookups of missing push resources don't hit the storage again until a push resource with the id is saved
+     */
+    @Test
+    public void testTombstones() {
+        assertThat(cache.get(MISSING_ID).isPresent(), is(false));
+        assertThat(cache.get(MISSING_ID).isPresent(), is(false));
+        assertThat(cache.getAll(Arrays.asList(MISSING_ID)).isEmpty(), is(true));
+        assertThat(storage.loads.get(), is(1));
+
+        cache.get(ID);
+        storage.resources.remove(ID);
+        cache.remove(ID);
+        assertThat(cache.get(ID).isPresent(), is(false));
+        assertThat(storage.loads.get(), is(2));
+
+        storage.add(ID);
+        cache.put(storage.resources.get(ID));
+        assertThat(cache.get(ID).isPresent(), is(true));
+    }
+
+    /**
+     * Tests that ids which aren't valid UUIDs are rejected without hitting the storage
+     */
+    @Test
+    public void testInvalidId() {
+        assertThat(cache.get("missing").isPresent(), is(false));
+        assertThat(cache.get(ID.toUpperCase() + "0").isPresent(), is(false));
+        assertThat(cache.getAll(Arrays.asList("missing", "")).isEmpty(), is(true));
+        assertThat(storage.loads.get(), is(0));
+    }
+
+    private static class TestStorage implements PushResourceStorage {
+
+        final Map<String, PushResource> resources = new ConcurrentHashMap<>();
+        final AtomicInteger loads = new AtomicInteger();
+        volatile CountDownLatch block;
+
+        void add(String id) {
+            DefaultPushResource resource = new DefaultPushResource();
+            resource.setId(id);
+            resources.put(id, resource);
+        }
+
+        private void await() {
+            if (block != null) {
+                try {
+                    block.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public Optional<PushResource> getById(String id) {
+            loads.incrementAndGet();
+            await();
+            return Optional.ofNullable(resources.get(id));
+        }
+
+        @Override
+        public List<PushResource> getByIds(Collection<String> ids) {
+            loads.incrementAndGet();
+            List<PushResource> result = new ArrayList<>();
+            for (String id : ids) {
+                PushResource resource = resources.get(id);
+                if (resource != null) {
+                    result.add(resource);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public PushResource save(PushResource res) {
+            resources.put(res.getId(), res);
+            return res;
+        }
+
+        @Override
+        public PushResource update(PushResource original, PushResource res) {
+            return save(res);
+        }
+
+        @Override
+        public void touch(Collection<PushResource> touched) {
+            touched.forEach(this::save);
+        }
+
+        @Override
+        public void delete(PushResource res) {
+            resources.remove(res.getId());
+        }
+
+        @Override
+        public <T extends PushResource> List<T> list(long from, long to) {
+            return new ArrayList<>();
+        }
+    }
+
+}
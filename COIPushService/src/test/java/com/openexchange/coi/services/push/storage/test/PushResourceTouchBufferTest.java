@@ -0,0 +1,240 @@
+package com.openexchange.coi.services.push.storage.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.PushResourceStorage;
+import com.openexchange.coi.services.push.storage.PushResourceTouchBuffer;
+import com.openexchange.coi.services.push.storage.TouchConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PushResourceTouchBufferTest} - Contains tests for the {@link PushResourceTouchBuffer}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushResourceTouchBufferTest {
+
+    private static final String ID = "0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a";
+    private static final String OTHER_ID = "5d0f3c2a-7b1e-4c6d-8a9f-1e2d3c4b5a69";
+
+    private TestStorage storage;
+    private TouchConfiguration config;
+    private PushResourceTouchBuffer buffer;
+
+    @Before
+    public void setUp() {
+        storage = new TestStorage();
+        config = new TouchConfiguration();
+        config.setEnabled(true);
+        config.setBatchSize(2);
+        buffer = new PushResourceTouchBuffer(config, storage, new SimpleMeterRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        buffer.shutdown();
+    }
+
+    private static PushResource resource(String id, long expiry) {
+        DefaultPushResource result = new DefaultPushResource();
+        result.setId(id);
+        result.setValid(true);
+        result.setExpireDate(new Date(expiry));
+        return result;
+    }
+
+    /**
+     * Tests that touches of the same push resource are coalesced and written in batches
+     */
+    @Test
+    public void testCoalesce() throws Exception {
+        buffer.touch(resource(ID, 1));
+        buffer.touch(resource(ID, 2));
+        buffer.touch(resource(OTHER_ID, 3));
+        assertThat(storage.batches.isEmpty(), is(true));
+
+        buffer.flush();
+        assertThat(storage.batches.size(), is(1));
+        List<PushResource> batch = storage.batches.get(0);
+        assertThat(batch.size(), is(2));
+        for (PushResource resource : batch) {
+            assertThat(resource.getExpireDate().getTime(), is(ID.equals(resource.getId()) ? 2L : 3L));
+        }
+        buffer.flush();
+        assertThat(storage.batches.size(), is(1));
+    }
+
+    /**
+     * Tests that the pending touch of a single push resource can be written in advance
+     */
+    @Test
+    public void testFlushSingle() throws Exception {
+        buffer.touch(resource(ID, 1));
+        buffer.touch(resource(OTHER_ID, 2));
+        buffer.flush(ID);
+        assertThat(storage.batches.size(), is(1));
+        assertThat(storage.batches.get(0).get(0).getId(), is(ID));
+
+        buffer.shutdown();
+        assertThat(storage.batches.size(), is(2));
+        assertThat(storage.batches.get(1).get(0).getId(), is(OTHER_ID));
+    }
+
+    /**
+     * Tests that failed touches are kept unless a newer touch is pending
+     */
+    @Test
+    public void testRetry() throws Exception {
+        buffer.touch(resource(ID, 1));
+        storage.fail = true;
+        buffer.flush();
+        storage.fail = false;
+        buffer.flush();
+        assertThat(storage.batches.size(), is(1));
+        assertThat(storage.batches.get(0).get(0).getExpireDate().getTime(), is(1L));
+    }
+
+    /**
+     * Tests that a touch which can't be written before the push resource is changed is passed on to the caller instead of being retried
+     */
+    @Test
+    public void testFlushSingleFailure() throws Exception {
+        buffer.touch(resource(ID, 1));
+        storage.fail = true;
+        try {
+            buffer.flush(ID);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        storage.fail = false;
+        buffer.flush();
+        assertThat(storage.batches.isEmpty(), is(true));
+    }
+
+    /**
+     * Tests that touches are written immediately in case the buffer is disabled
+     */
+    @Test
+    public void testDisabled() throws Exception {
+        config.setEnabled(false);
+        buffer.touch(resource(ID, 1));
+        assertThat(storage.saved, is(0));
+        assertThat(storage.batches.size(), is(1));
+    }
+
+    /**
+     * Tests that touches are written immediately in case the maximum number of pending touches is reached
+     */
+    @Test
+    public void testMaxPending() throws Exception {
+        config.setMaxPending(1);
+        buffer.touch(resource(ID, 1));
+        buffer.touch(resource(ID, 2));
+        assertThat(storage.batches.isEmpty(), is(true));
+        buffer.touch(resource(OTHER_ID, 3));
+        assertThat(storage.batches.size(), is(1));
+        assertThat(storage.batches.get(0).get(0).getId(), is(OTHER_ID));
+        buffer.flush();
+        assertThat(storage.batches.size(), is(2));
+        assertThat(storage.batches.get(1).size(), is(1));
+        assertThat(storage.batches.get(1).get(0).getId(), is(ID));
+        assertThat(storage.saved, is(0));
+    }
+
+    /**
+     * Tests that flushing a single push resource waits for a running flush which currently writes its touch
+     */
+    @Test
+    public void testFlushWaitsForRunningWrite() throws Exception {
+        storage.entered = new CountDownLatch(1);
+        storage.release = new CountDownLatch(1);
+        buffer.touch(resource(ID, 1));
+        Thread flusher = new Thread(buffer::flush);
+        flusher.start();
+        assertThat(storage.entered.await(5, TimeUnit.SECONDS), is(true));
+
+        CountDownLatch flushed = new CountDownLatch(1);
+        Thread single = new Thread(() -> {
+            buffer.flush(ID);
+            flushed.countDown();
+        });
+        single.start();
+        assertThat(flushed.await(200, TimeUnit.MILLISECONDS), is(false));
+        storage.release.countDown();
+        assertThat(flushed.await(5, TimeUnit.SECONDS), is(true));
+        flusher.join();
+        assertThat(storage.batches.size(), is(1));
+    }
+
+    private static class TestStorage implements PushResourceStorage {
+
+        final List<List<PushResource>> batches = new ArrayList<>();
+        volatile boolean fail;
+        volatile CountDownLatch entered;
+        volatile CountDownLatch release;
+        int saved;
+
+        @Override
+        public Optional<PushResource> getById(String id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<PushResource> getByIds(Collection<String> ids) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public PushResource save(PushResource res) {
+            saved++;
+            return res;
+        }
+
+        @Override
+        public PushResource update(PushResource original, PushResource res) {
+            return save(res);
+        }
+
+        @Override
+        public void touch(Collection<PushResource> resources) {
+            if (fail) {
+                throw new IllegalStateException("Database unavailable");
+            }
+            if (entered != null) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            batches.add(new ArrayList<>(resources));
+        }
+
+        @Override
+        public void delete(PushResource res) {
+            // no-op
+        }
+
+        @Override
+        public <T extends PushResource> List<T> list(long from, long to) {
+            return new ArrayList<>();
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.openexchange.coi.services.push.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.PushService;
+import com.openexchange.coi.services.push.storage.DefaultPushResource;
+import com.openexchange.coi.services.push.storage.PushResource;
+import com.openexchange.coi.services.push.storage.PushResourceCache;
+import com.openexchange.coi.services.push.storage.PushResourceStorage;
+import com.openexchange.coi.services.push.storage.PushResourceTouchBuffer;
+import com.openexchange.coi.services.push.transport.PushTransport;
+import com.openexchange.coi.services.push.transport.PushTransportRegistry;
+
+/**
+ * {@link PushServiceTest} - Contains tests for the multicast of the {@link PushService}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PushServiceTest {
+
+    private static final byte[] DATA = "test".getBytes(StandardCharsets.UTF_8);
+
+    private PushTransportRegistry registry;
+    private PushTransport transport;
+    private PushResourceStorage storage;
+    private PushService pushService;
+
+    @Before
+    public void setUp() {
+        pushService = new PushService();
+        registry = mock(PushTransportRegistry.class);
+        transport = mock(PushTransport.class);
+        storage = mock(PushResourceStorage.class);
+        when(registry.getTransportForName(any())).thenReturn(Optional.empty());
+        when(registry.getTransportForName("test")).thenReturn(Optional.of(transport));
+        ReflectionTestUtils.setField(pushService, "registry", registry);
+        ReflectionTestUtils.setField(pushService, "resourceStorage", storage);
+        ReflectionTestUtils.setField(pushService, "resourceCache", mock(PushResourceCache.class));
+        ReflectionTestUtils.setField(pushService, "touchBuffer", mock(PushResourceTouchBuffer.class));
+    }
+
+    private static PushResource resource(String id, String transport, boolean valid) {
+        DefaultPushResource result = new DefaultPushResource();
+        result.setId(id);
+        result.setTransport(transport);
+        result.setPushToken("token-" + id);
+        result.setValid(valid);
+        return result;
+    }
+
+    /**
+     * Tests that push resources are grouped by transport and validation state and that each push resource gets the result of its own token
+     */
+    @Test
+    public void testMulticast() {
+        PushResource a = resource("a", "test", true);
+        PushResource b = resource("b", "test", false);
+        PushResource c = resource("c", "test", true);
+        PushResource d = resource("d", "unknown", true);
+        PushResource e = resource("e", "test", false);
+        when(transport.transportMulticast(Arrays.asList("token-a", "token-c"), true, DATA)).thenReturn(CompletableFuture.completedFuture(Arrays.asList(null, CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create())));
+        when(transport.transportMulticast(Arrays.asList("token-b", "token-e"), false, DATA)).thenReturn(CompletableFuture.completedFuture(Arrays.asList(CoiServiceExceptionCodes.QUOTA_EXCEEDED.create("30"), null)));
+
+        Map<String, CoiServiceException> errors = pushService.sendMulticastAsync(Arrays.asList(a, b, c, d, e), DATA).join();
+        assertThat(errors.size(), is(3));
+        assertThat(CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(errors.get("b")), is(true));
+        assertThat(CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.equals(errors.get("c")), is(true));
+        assertThat(CoiServiceExceptionCodes.INVALID_TRANSPORT.equals(errors.get("d")), is(true));
+
+        // Push resources with an invalid push token are removed
+        verify(storage).delete(c);
+        verify(storage, never()).delete(b);
+    }
+
+    /**
+     * Tests that a failed multicast message fails all push resources of its group
+     */
+    @Test
+    public void testMulticastFailure() {
+        PushResource a = resource("a", "test", true);
+        PushResource b = resource("b", "test", true);
+        CompletableFuture<List<CoiServiceException>> failed = CompletableFuture.failedFuture(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create("test", "1"));
+        when(transport.transportMulticast(anyList(), anyBoolean(), eq(DATA))).thenReturn(failed);
+
+        Map<String, CoiServiceException> errors = pushService.sendMulticastAsync(Arrays.asList(a, b), DATA).join();
+        assertThat(errors.size(), is(2));
+        assertThat(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(errors.get("a")), is(true));
+        assertThat(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(errors.get("b")), is(true));
+    }
+
+    /**
+     * Tests that an empty multicast completes without sending anything
+     */
+    @Test
+    public void testEmptyMulticast() {
+        assertThat(pushService.sendMulticastAsync(Collections.emptyList(), DATA).join().isEmpty(), is(true));
+        verify(transport, never()).transportMulticast(anyList(), anyBoolean(), any());
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.openexchange.coi.services.push.transport.limit.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.push.transport.limit.AdaptiveConcurrencyLimiter;
+import com.openexchange.coi.services.push.transport.limit.TransportLimitConfiguration;
+
+/**
+ * {@link AdaptiveConcurrencyLimiterTest} - Contains tests for the {@link AdaptiveConcurrencyLimiter}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Before
+    public void setUp() {
+        TransportLimitConfiguration config = new TransportLimitConfiguration();
+        config.setInitialLimit(4);
+        config.setMinLimit(2);
+        config.setMaxLimit(6);
+        config.setBackoffRatio(0.5);
+        config.setLatencyThreshold(100);
+        limiter = new AdaptiveConcurrencyLimiter(config);
+    }
+
+    private void acquire(int count) {
+        for (int i = 0; i < count; i++) {
+            assertThat(limiter.tryAcquire(), is(true));
+        }
+    }
+
+    /**
+     * Tests that no more permits than the limit are handed out and that canceled permits don't change the limit
+     */
+    @Test
+    public void testAcquire() {
+        acquire(4);
+        assertThat(limiter.tryAcquire(), is(false));
+        assertThat(limiter.getInFlight(), is(4));
+        limiter.cancel();
+        assertThat(limiter.getLimit(), is(4));
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(false));
+    }
+
+    /**
+     * Tests that the limit grows by one per fast push message while it is utilized, up to the maximum
+     */
+    @Test
+    public void testAdditiveIncrease() {
+        acquire(4);
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(5));
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(6));
+        // Two of six permits in flight don't utilize the limit
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(6));
+
+        acquire(5);
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(6));
+    }
+
+    /**
+     * Tests that the limit doesn't grow while it isn't utilized
+     */
+    @Test
+    public void testUnutilized() {
+        acquire(1);
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(4));
+    }
+
+    /**
+     * Tests that the limit shrinks by the backoff ratio in case of an overload or a slow push message, down to the minimum
+     */
+    @Test
+    public void testMultiplicativeDecrease() {
+        acquire(1);
+        limiter.release(FAST, true);
+        assertThat(limiter.getLimit(), is(2));
+
+        acquire(1);
+        limiter.release(FAST, false);
+        assertThat(limiter.getLimit(), is(3));
+        acquire(1);
+        limiter.release(SLOW, false);
+        assertThat(limiter.getLimit(), is(2));
+        acquire(1);
+        limiter.release(SLOW, false);
+        assertThat(limiter.getLimit(), is(2));
+        assertThat(limiter.getInFlight(), is(0));
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.openexchange.coi.services.push.transport.limit.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.push.transport.limit.CircuitBreaker;
+import com.openexchange.coi.services.push.transport.limit.CircuitBreaker.State;
+import com.openexchange.coi.services.push.transport.limit.TransportLimitConfiguration;
+import io.micrometer.core.instrument.MockClock;
+
+/**
+ * {@link CircuitBreakerTest} - Contains tests for the {@link CircuitBreaker}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class CircuitBreakerTest {
+
+    private MockClock clock;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        TransportLimitConfiguration config = new TransportLimitConfiguration();
+        config.setFailureThreshold(3);
+        config.setOpenDuration(10);
+        clock = new MockClock();
+        breaker = new CircuitBreaker(config, clock);
+    }
+
+    private long acquire() {
+        long permit = breaker.tryAcquire();
+        assertThat(permit, is(not(CircuitBreaker.NO_PERMIT)));
+        return permit;
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(acquire(), -1, false);
+        }
+        assertThat(breaker.getState(), is(State.OPEN));
+    }
+
+    /**
+     * Tests the transitions from closed to open to half open and back to closed
+     */
+    @Test
+    public void testTransitions() {
+        breaker.onFailure(acquire(), -1, false);
+        breaker.onFailure(acquire(), -1, false);
+        assertThat(breaker.getState(), is(State.CLOSED));
+        breaker.onFailure(acquire(), -1, false);
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        assertThat(breaker.getRetryAfter(), is(10L));
+
+        clock.add(9, TimeUnit.SECONDS);
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        assertThat(breaker.getRetryAfter(), is(1L));
+        clock.add(1, TimeUnit.SECONDS);
+        long trial = acquire();
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+
+        breaker.onSuccess(trial);
+        assertThat(breaker.getState(), is(State.CLOSED));
+        acquire();
+        acquire();
+    }
+
+    /**
+     * Tests that only a single trial push message is let through while the breaker is half open
+     */
+    @Test
+    public void testProbeAdmission() {
+        open();
+        clock.add(10, TimeUnit.SECONDS);
+        acquire();
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+    }
+
+    /**
+     * Tests that a failed trial push message opens the breaker again
+     */
+    @Test
+    public void testProbeFailure() {
+        open();
+        clock.add(10, TimeUnit.SECONDS);
+        breaker.onFailure(acquire(), -1, false);
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        clock.add(10, TimeUnit.SECONDS);
+        acquire();
+    }
+
+    /**
+     * Tests that a success resets the number of consecutive failures
+     */
+    @Test
+    public void testSuccessResetsFailures() {
+        breaker.onFailure(acquire(), -1, false);
+        breaker.onFailure(acquire(), -1, false);
+        breaker.onSuccess(acquire());
+        breaker.onFailure(acquire(), -1, false);
+        breaker.onFailure(acquire(), -1, false);
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+    /**
+     * Tests that an exceeded quota opens the breaker immediately for the Retry-After time of the transport
+     */
+    @Test
+    public void testQuota() {
+        breaker.onFailure(acquire(), 30, true);
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.isOpenedByQuota(), is(true));
+        assertThat(breaker.getRetryAfter(), is(30L));
+        clock.add(29, TimeUnit.SECONDS);
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        clock.add(1, TimeUnit.SECONDS);
+        acquire();
+    }
+
+    /**
+     * Tests that the outcome of push messages sent before the breaker opened neither closes the breaker nor delays or disturbs the trial push
+     * message
+     */
+    @Test
+    public void testStaleOutcome() {
+        long first = acquire();
+        long second = acquire();
+        long third = acquire();
+        breaker.onFailure(acquire(), 30, true);
+        assertThat(breaker.getState(), is(State.OPEN));
+
+        // Still in flight while the quota opened the breaker
+        breaker.onSuccess(first);
+        breaker.onFailure(second, 60, true);
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.getRetryAfter(), is(30L));
+
+        clock.add(30, TimeUnit.SECONDS);
+        long trial = acquire();
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        breaker.onFailure(third, -1, false);
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        assertThat(breaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+
+        breaker.onSuccess(trial);
+        assertThat(breaker.getState(), is(State.CLOSED));
+        breaker.onFailure(trial, 30, true);
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.openexchange.coi.services.push.transport.limit.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.exception.CoiServiceException;
+import com.openexchange.coi.services.exception.CoiServiceExceptionCodes;
+import com.openexchange.coi.services.push.transport.PushTransport;
+import com.openexchange.coi.services.push.transport.Transport;
+import com.openexchange.coi.services.push.transport.limit.CircuitBreaker.State;
+import com.openexchange.coi.services.push.transport.limit.GuardedPushTransport;
+import com.openexchange.coi.services.push.transport.limit.TransportLimitConfiguration;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link GuardedPushTransportTest} - Contains tests for the {@link GuardedPushTransport}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class GuardedPushTransportTest {
+
+    private static final String TOKEN = "token";
+    private static final byte[] DATA = new byte[0];
+
+    private MockClock clock;
+    private TestTransport delegate;
+    private GuardedPushTransport transport;
+
+    @Before
+    public void setUp() {
+        TransportLimitConfiguration config = new TransportLimitConfiguration();
+        config.setInitialLimit(2);
+        config.setMinLimit(1);
+        config.setMaxLimit(4);
+        config.setBackoffRatio(0.5);
+        config.setLatencyThreshold(100);
+        config.setFailureThreshold(2);
+        config.setOpenDuration(10);
+        clock = new MockClock();
+        delegate = new TestTransport();
+        transport = new GuardedPushTransport(delegate, config, new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock));
+    }
+
+    private static CoiServiceException getError(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            return (CoiServiceException) e.getCause();
+        }
+        fail("Expected an error");
+        return null;
+    }
+
+    /**
+     * Tests that push messages exceeding the concurrency limit are rejected without being sent
+     */
+    @Test
+    public void testLimitRejection() {
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        delegate.futures.add(first);
+        delegate.futures.add(second);
+        CompletableFuture<Void> r1 = transport.transportAsync(TOKEN, true, DATA);
+        CompletableFuture<Void> r2 = transport.transportAsync(TOKEN, true, DATA);
+        CoiServiceException e = getError(transport.transportAsync(TOKEN, true, DATA));
+        assertThat(CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.equals(e), is(true));
+        assertThat(delegate.calls, is(2));
+        assertThat(transport.getLimiter().getInFlight(), is(2));
+
+        first.complete(null);
+        second.complete(null);
+        r1.join();
+        r2.join();
+        assertThat(transport.getLimiter().getInFlight(), is(0));
+        assertThat(transport.getLimiter().getLimit(), is(3));
+    }
+
+    /**
+     * Tests that a slow push message reduces the concurrency limit
+     */
+    @Test
+    public void testSlowTransport() throws Exception {
+        delegate.latency = 200;
+        transport.transport(TOKEN, true, DATA);
+        assertThat(transport.getLimiter().getLimit(), is(1));
+        assertThat(transport.getBreaker().getState(), is(State.CLOSED));
+    }
+
+    /**
+     * Tests that consecutive transport errors open the breaker, which rejects push messages until the Retry-After time of the transport passed
+     */
+    @Test
+    public void testBreaker() throws Exception {
+        delegate.errors.add(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create(Transport.test.name(), "7"));
+        delegate.errors.add(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.create(Transport.test.name(), "7"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.transport(TOKEN, true, DATA);
+                fail("Expected an error");
+            } catch (CoiServiceException e) {
+                assertThat(CoiServiceExceptionCodes.TRANSPORT_UNAVAILABLE.equals(e), is(true));
+            }
+        }
+        assertThat(transport.getBreaker().getState(), is(State.OPEN));
+
+        CoiServiceException e = getError(transport.transportAsync(TOKEN, true, DATA));
+        assertThat(CoiServiceExceptionCodes.TRANSPORT_OVERLOADED.equals(e), is(true));
+        assertThat(e.getArgs().get(1), is(Long.valueOf(7)));
+        assertThat(delegate.calls, is(2));
+        assertThat(transport.getLimiter().getInFlight(), is(0));
+
+        clock.add(7, TimeUnit.SECONDS);
+        transport.transport(TOKEN, true, DATA);
+        assertThat(delegate.calls, is(3));
+        assertThat(transport.getBreaker().getState(), is(State.CLOSED));
+    }
+
+    /**
+     * Tests that an exceeded quota opens the breaker immediately and is reported as such
+     */
+    @Test
+    public void testQuota() {
+        delegate.errors.add(CoiServiceExceptionCodes.QUOTA_EXCEEDED.create("30"));
+        assertThat(CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(getError(transport.transportAsync(TOKEN, true, DATA))), is(true));
+        assertThat(transport.getBreaker().getState(), is(State.OPEN));
+
+        CoiServiceException e = getError(transport.transportAsync(TOKEN, true, DATA));
+        assertThat(CoiServiceExceptionCodes.QUOTA_EXCEEDED.equals(e), is(true));
+        assertThat(e.getArgs().get(0), is(Long.valueOf(30)));
+        assertThat(delegate.calls, is(1));
+    }
+
+    /**
+     * Tests that errors caused by the push message itself neither open the breaker nor reduce the limit
+     */
+    @Test
+    public void testClientError() {
+        for (int i = 0; i < 3; i++) {
+            delegate.errors.add(CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.create());
+            assertThat(CoiServiceExceptionCodes.INVALID_PUSH_TOKEN.equals(getError(transport.transportAsync(TOKEN, true, DATA))), is(true));
+        }
+        assertThat(transport.getBreaker().getState(), is(State.CLOSED));
+        // Counted as successful transports
+        assertThat(transport.getLimiter().getLimit(), is(3));
+    }
+
+    private class TestTransport implements PushTransport {
+
+        final Deque<CompletableFuture<Void>> futures = new ArrayDeque<>();
+        final Deque<CoiServiceException> errors = new ArrayDeque<>();
+        long latency;
+        int calls;
+
+        @Override
+        public void transport(String token, boolean resourceValidated, byte[] data) throws CoiServiceException {
+            calls++;
+            clock.add(latency, TimeUnit.MILLISECONDS);
+            if (errors.isEmpty() == false) {
+                throw errors.poll();
+            }
+        }
+
+        @Override
+        public CompletableFuture<Void> transportAsync(String token, boolean resourceValidated, byte[] data) {
+            if (futures.isEmpty()) {
+                return PushTransport.super.transportAsync(token, resourceValidated, data);
+            }
+            calls++;
+            return futures.poll();
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public Transport getTransport() {
+            return Transport.test;
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.openexchange.coi.services.push.transport.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.google.api.core.SettableApiFuture;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
+import com.openexchange.coi.services.push.transport.FirebaseMessageBatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link FirebaseMessageBatcherTest} - Contains tests for the {@link FirebaseMessageBatcher}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class FirebaseMessageBatcherTest {
+
+    private static final long LINGER = 100;
+
+    private FirebaseMessaging messaging;
+    private List<SettableApiFuture<BatchResponse>> requests;
+    private FirebaseMessageBatcher batcher;
+
+    @Before
+    public void setUp() {
+        messaging = mock(FirebaseMessaging.class);
+        requests = new ArrayList<>();
+        when(messaging.sendAllAsync(any())).thenAnswer(invocation -> {
+            SettableApiFuture<BatchResponse> result = SettableApiFuture.create();
+            synchronized (requests) {
+                requests.add(result);
+            }
+            return result;
+        });
+        batcher = new FirebaseMessageBatcher(messaging, 3, LINGER, new SimpleMeterRegistry());
+    }
+
+    @After
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    private static Message message(String token) {
+        return Message.builder().setToken(token).build();
+    }
+
+    private static SendResponse success(String messageId) throws Exception {
+        Method method = SendResponse.class.getDeclaredMethod("fromMessageId", String.class);
+        method.setAccessible(true);
+        return (SendResponse) method.invoke(null, messageId);
+    }
+
+    private static SendResponse failure(FirebaseMessagingException e) throws Exception {
+        Method method = SendResponse.class.getDeclaredMethod("fromException", FirebaseMessagingException.class);
+        method.setAccessible(true);
+        return (SendResponse) method.invoke(null, e);
+    }
+
+    private static FirebaseMessagingException exception(String errorCode) throws Exception {
+        Constructor<FirebaseMessagingException> constructor = FirebaseMessagingException.class.getDeclaredConstructor(String.class, String.class, Throwable.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(errorCode, errorCode, null);
+    }
+
+    private static BatchResponse response(SendResponse... responses) throws Exception {
+        Constructor<BatchResponse> constructor = BatchResponse.class.getDeclaredConstructor(List.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(Arrays.asList(responses));
+    }
+
+    private SettableApiFuture<BatchResponse> request(int index) {
+        synchronized (requests) {
+            return requests.get(index);
+        }
+    }
+
+    /**
+     * Tests that a batch which isn't full is sent once the linger time of its first message elapsed
+     */
+    @Test
+    public void testLinger() throws Exception {
+        Message first = message("first");
+        Message second = message("second");
+        CompletableFuture<String> r1 = batcher.submit(first);
+        CompletableFuture<String> r2 = batcher.submit(second);
+        verify(messaging, after(LINGER / 2).never()).sendAllAsync(any());
+
+        verify(messaging, timeout(5 * LINGER)).sendAllAsync(Arrays.asList(first, second));
+        assertThat(r1.isDone(), is(false));
+        request(0).set(response(success("id1"), success("id2")));
+        assertThat(r1.join(), is("id1"));
+        assertThat(r2.join(), is("id2"));
+    }
+
+    /**
+     * Tests that a full batch is sent immediately and that further messages start a new batch
+     */
+    @Test
+    public void testSizeFlush() throws Exception {
+        List<Message> messages = Arrays.asList(message("1"), message("2"), message("3"));
+        messages.forEach(batcher::submit);
+        verify(messaging).sendAllAsync(messages);
+
+        Message fourth = message("4");
+        batcher.submit(fourth);
+        verify(messaging, never()).sendAllAsync(Arrays.asList(fourth));
+        verify(messaging, timeout(5 * LINGER)).sendAllAsync(Arrays.asList(fourth));
+    }
+
+    /**
+     * Tests that each caller gets the result of its own message
+     */
+    @Test
+    public void testPerMessageResults() throws Exception {
+        CompletableFuture<String> r1 = batcher.submit(message("1"));
+        CompletableFuture<String> r2 = batcher.submit(message("2"));
+        CompletableFuture<String> r3 = batcher.submit(message("3"));
+        FirebaseMessagingException unregistered = exception("registration-token-not-registered");
+        request(0).set(response(success("id1"), failure(unregistered)));
+
+        assertThat(r1.join(), is("id1"));
+        assertFailure(r2, unregistered);
+        try {
+            r3.join();
+            fail("Expected an error for the message without response");
+        } catch (CompletionException e) {
+            assertThat(e.getCause() instanceof IllegalStateException, is(true));
+        }
+    }
+
+    /**
+     * Tests that a failed batch request fails all of its messages
+     */
+    @Test
+    public void testBatchFailure() throws Exception {
+        CompletableFuture<String> r1 = batcher.submit(message("1"));
+        CompletableFuture<String> r2 = batcher.submit(message("2"));
+        CompletableFuture<String> r3 = batcher.submit(message("3"));
+        FirebaseMessagingException error = exception("server-unavailable");
+        request(0).setException(error);
+        assertFailure(r1, error);
+        assertFailure(r2, error);
+        assertFailure(r3, error);
+    }
+
+    /**
+     * Tests that a batch request which can't even be started fails all of its messages
+     */
+    @Test
+    public void testSendFailure() {
+        IllegalStateException error = new IllegalStateException("FirebaseApp was deleted");
+        when(messaging.sendAllAsync(any())).thenThrow(error);
+        CompletableFuture<String> r1 = batcher.submit(message("1"));
+        CompletableFuture<String> r2 = batcher.submit(message("2"));
+        CompletableFuture<String> r3 = batcher.submit(message("3"));
+        assertFailure(r1, error);
+        assertFailure(r2, error);
+        assertFailure(r3, error);
+
+        // Also in case the batch is sent after the linger time
+        assertFailure(batcher.submit(message("4")), error);
+    }
+
+    /**
+     * Tests that pending messages are sent on shutdown
+     */
+    @Test
+    public void testShutdown() {
+        Message message = message("1");
+        batcher.submit(message);
+        batcher.shutdown();
+        verify(messaging).sendAllAsync(Arrays.asList(message));
+        assertThat(batcher.submit(message("2")).isCompletedExceptionally(), is(true));
+    }
+
+    private static void assertFailure(CompletableFuture<String> future, Throwable expected) {
+        try {
+            future.join();
+            fail("Expected " + expected);
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), sameInstance(expected));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.openexchange.coi.services.util.purge.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.openexchange.coi.services.util.purge.ExpiringStorage;
+import com.openexchange.coi.services.util.purge.ExpiryPurger;
+import com.openexchange.coi.services.util.purge.PurgeConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link ExpiryPurgerTest} - Contains tests for the {@link ExpiryPurger}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class ExpiryPurgerTest {
+
+    private PurgeConfiguration config;
+    private SimpleMeterRegistry registry;
+    private ExpiryPurger purger;
+    private TestStorage storage;
+
+    @Before
+    public void setUp() {
+        config = new PurgeConfiguration();
+        config.setBatchSize(10);
+        config.setRate(0);
+        registry = new SimpleMeterRegistry();
+        purger = new ExpiryPurger(config, registry);
+        storage = new TestStorage(25);
+    }
+
+    @After
+    public void tearDown() {
+        purger.shutdown();
+    }
+
+    /**
+     * Tests that all expired entries are deleted in batches and the listener is notified about each batch
+     */
+    @Test
+    public void testBatches() {
+        List<String> notified = new ArrayList<>();
+        assertThat(purger.purge("test", storage, new Date(), notified::addAll), is(25));
+        assertThat(storage.entries.isEmpty(), is(true));
+        assertThat(storage.batches, is(3));
+        assertThat(notified.size(), is(25));
+        assertThat(registry.get("com.openexchange.coi.services.purge").tag("type", "deleted").counter().count(), is(25d));
+    }
+
+    /**
+     * Tests that the purge doesn't exceed the configured rate
+     */
+    @Test
+    public void testRate() {
+        config.setRate(100);
+        long start = System.nanoTime();
+        purger.purge("test", storage, new Date(), ids -> {});
+        // The last batch is only paced by the previous ones
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), greaterThanOrEqualTo(200L));
+    }
+
+    /**
+     * Tests that cleanups are executed by a thread of their own and that a cleanup of a table is skipped while the previous one is still running
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testExecute() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        Thread caller = Thread.currentThread();
+        assertThat(purger.execute("test", () -> {
+            assertThat(Thread.currentThread() == caller, is(false));
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }), is(true));
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(purger.execute("test", done::countDown), is(false));
+        release.countDown();
+        // The next cleanup is accepted once the previous one finished
+        while (purger.execute("test", done::countDown) == false) {
+            Thread.sleep(10);
+        }
+        assertThat(done.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    private static class TestStorage implements ExpiringStorage {
+
+        final List<String> entries = new ArrayList<>();
+        int batches;
+
+        TestStorage(int size) {
+            for (int i = 0; i < size; i++) {
+                entries.add(String.valueOf(i));
+            }
+        }
+
+        @Override
+        public List<String> getExpired(Date date, int limit) {
+            return new ArrayList<>(entries.subList(0, Math.min(limit, entries.size())));
+        }
+
+        @Override
+        public int deleteExpired(List<String> ids, Date date) {
+            batches++;
+            entries.removeAll(ids);
+            return ids.size();
+        }
+    }
+
+}
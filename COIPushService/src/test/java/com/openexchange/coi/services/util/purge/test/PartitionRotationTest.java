@@ -0,0 +1,183 @@
+package com.openexchange.coi.services.util.purge.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import com.openexchange.coi.services.util.purge.ExpiryBuckets;
+import com.openexchange.coi.services.util.purge.PartitionRotation;
+import com.openexchange.coi.services.util.purge.PurgeConfiguration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link PartitionRotationTest} - Contains tests for the {@link PartitionRotation} and the {@link ExpiryBuckets}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class PartitionRotationTest {
+
+    private static final String TABLE = "test";
+    private static final String COLUMN = "expiredate";
+    /** Within the bucket 100 */
+    private static final Date NOW = new Date(TimeUnit.HOURS.toMillis(100) + TimeUnit.MINUTES.toMillis(30));
+
+    private JdbcTemplate template;
+    private PartitionRotation rotation;
+
+    @Before
+    public void setUp() {
+        PurgeConfiguration config = new PurgeConfiguration();
+        config.setInterval(6);
+        config.setAhead(12);
+        template = mock(JdbcTemplate.class);
+        rotation = new PartitionRotation(template, config, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Mocks the partitions of the table
+     *
+     * @param partitions The names and descriptions of the partitions
+     */
+    @SuppressWarnings("unchecked")
+    private void partitions(String... partitions) {
+        when(template.query(anyString(), any(RowMapper.class), eq(TABLE))).thenAnswer(invocation -> {
+            RowMapper<Object> mapper = invocation.getArgument(1);
+            List<Object> result = new ArrayList<>();
+            for (int i = 0; i < partitions.length; i += 2) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn(partitions[i]);
+                when(rs.getString(2)).thenReturn(partitions[i + 1]);
+                result.add(mapper.mapRow(rs, i / 2));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Tests the bucket of an expiry
+     */
+    @Test
+    public void testBuckets() {
+        assertThat(ExpiryBuckets.of(NOW), is(100));
+        assertThat(ExpiryBuckets.of(new Date(TimeUnit.HOURS.toMillis(101) - 1)), is(100));
+        assertThat(ExpiryBuckets.of(null), is(ExpiryBuckets.NO_EXPIRY));
+    }
+
+    /**
+     * Tests that tables of databases without partitioning support are treated as not partitioned
+     */
+    @Test
+    public void testPartitioningUnsupported() {
+        when(template.queryForObject(anyString(), eq(Integer.class), eq(TABLE))).thenThrow(new BadSqlGrammarException("partitions", "SELECT", new SQLException("Table PARTITIONS not found")));
+        assertThat(ExpiryBuckets.isPartitioned(template, TABLE), is(false));
+    }
+
+    /**
+     * Tests that the first partition is aligned to the interval and that partitions are created up to the configured hours ahead
+     */
+    @Test
+    public void testInitialPartitions() {
+        partitions("pmax", "MAXVALUE");
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(0));
+        verify(template).execute("ALTER TABLE test REORGANIZE PARTITION pmax INTO (PARTITION p96 VALUES LESS THAN (96), PARTITION p102 VALUES LESS THAN (102), PARTITION p108 VALUES LESS THAN (108), PARTITION pmax VALUES LESS THAN MAXVALUE);");
+        verify(template, never()).execute(contains("DROP PARTITION"));
+    }
+
+    /**
+     * Tests that further partitions continue after the last bounded partition and that completely expired partitions are dropped
+     */
+    @Test
+    public void testRotate() {
+        partitions("p96", "96", "p102", "102", "pmax", "MAXVALUE");
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(1));
+        verify(template).execute("ALTER TABLE test REORGANIZE PARTITION pmax INTO (PARTITION p108 VALUES LESS THAN (108), PARTITION pmax VALUES LESS THAN MAXVALUE);");
+        verify(template).execute("ALTER TABLE test DROP PARTITION p96;");
+    }
+
+    /**
+     * Tests that no partitions are created in case they already cover the configured hours ahead
+     */
+    @Test
+    public void testUpToDate() {
+        partitions("p102", "102", "p108", "108", "p114", "114", "pmax", "MAXVALUE");
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(0));
+        verify(template, never()).execute(anyString());
+    }
+
+    /**
+     * Tests that a partition which still contains entries that are not expired isn't dropped
+     */
+    @Test
+    public void testNotExpired() {
+        partitions("p90", "90", "p96", "96", "p102", "102", "p108", "108", "p114", "114", "pmax", "MAXVALUE");
+        when(template.queryForList(contains("PARTITION (p90)"), eq(Integer.class), any())).thenReturn(Collections.singletonList(Integer.valueOf(1)));
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(1));
+        verify(template).execute("ALTER TABLE test DROP PARTITION p96;");
+        // Partitions of the current bucket are never checked
+        verify(template, never()).queryForList(contains("PARTITION (p102)"), eq(Integer.class), any());
+    }
+
+    /**
+     * Tests that no partitions are created in case the last partition isn't unbounded
+     */
+    @Test
+    public void testBoundedLastPartition() {
+        partitions("p102", "102", "p108", "108");
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(0));
+        verify(template, never()).execute(anyString());
+    }
+
+    /**
+     * Tests that tables which aren't partitioned are ignored
+     */
+    @Test
+    public void testNotPartitioned() {
+        partitions();
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(0));
+        verify(template, never()).execute(anyString());
+    }
+
+    /**
+     * Tests that a failed creation of partitions, e.g. because of a concurrent rotation, doesn't prevent dropping the expired partitions
+     */
+    @Test
+    public void testCreateFailure() {
+        partitions("p96", "96", "p102", "102", "pmax", "MAXVALUE");
+        doThrow(new DataAccessResourceFailureException("Concurrent reorganization")).when(template).execute(startsWith("ALTER TABLE test REORGANIZE"));
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(1));
+        verify(template).execute("ALTER TABLE test DROP PARTITION p96;");
+    }
+
+    /**
+     * Tests that a failed drop of partitions doesn't abort the cleanup
+     */
+    @Test
+    public void testDropFailure() {
+        partitions("p96", "96", "p102", "102", "p108", "108", "p114", "114", "pmax", "MAXVALUE");
+        doThrow(new DataAccessResourceFailureException("Partition doesn't exist")).when(template).execute(startsWith("ALTER TABLE test DROP"));
+        assertThat(rotation.rotate(TABLE, COLUMN, NOW), is(0));
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.openexchange.coi.services.util.test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.UUID;
+import org.junit.Test;
+import com.openexchange.coi.services.util.UUIDs;
+
+/**
+ * {@link UUIDsTest} - Contains tests for the {@link UUIDs}
+ *
+ * @author <a href="mailto:agent@local">agent</a>
+ * @since v1.0.0
+ */
+public class UUIDsTest {
+
+    private static final String ID = "0b6c1f5e-5e4a-4d5a-9f0b-2c1d5b8e6f7a";
+
+    /**
+     * Tests that the binary form keeps the textual form
+     */
+    @Test
+    public void testRoundTrip() {
+        byte[] bytes = UUIDs.toBytes(ID);
+        assertThat(bytes.length, is(16));
+        assertThat(bytes[0], is((byte) 0x0b));
+        assertThat(bytes[15], is((byte) 0x7a));
+        assertThat(UUIDs.fromBytes(bytes).toString(), is(ID));
+    }
+
+    /**
+     * Tests that only the canonical textual form is accepted
+     */
+    @Test
+    public void testParse() {
+        assertThat(UUIDs.parse(ID).get(), is(UUID.fromString(ID)));
+        assertThat(UUIDs.parse(ID.toUpperCase()).get(), is(UUID.fromString(ID)));
+        assertThat(UUIDs.parse(null).isPresent(), is(false));
+        assertThat(UUIDs.parse("1-1-1-1-1").isPresent(), is(false));
+        assertThat(UUIDs.parse(ID.replace('-', 'x')).isPresent(), is(false));
+        assertThat(UUIDs.parse(ID.replace('f', 'g')).isPresent(), is(false));
+    }
+
+}